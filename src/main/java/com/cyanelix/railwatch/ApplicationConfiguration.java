@@ -1,10 +1,14 @@
 package com.cyanelix.railwatch;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import java.time.Clock;
 import java.time.ZoneId;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class ApplicationConfiguration {
@@ -12,4 +16,37 @@ public class ApplicationConfiguration {
     public Clock clock() {
         return Clock.system(ZoneId.of("Europe/London"));
     }
+
+    @Bean
+    public ThreadPoolTaskExecutor readExecutor(@Value("${reads.workers:8}") int workerCount,
+                                               @Value("${reads.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor readExecutor = new ThreadPoolTaskExecutor();
+        readExecutor.setCorePoolSize(workerCount);
+        readExecutor.setMaxPoolSize(workerCount);
+        readExecutor.setQueueCapacity(queueCapacity);
+        readExecutor.setThreadNamePrefix("read-");
+        readExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return readExecutor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor lookupExecutor(@Value("${schedules.lookup-workers:8}") int workerCount) {
+        ThreadPoolTaskExecutor lookupExecutor = new ThreadPoolTaskExecutor();
+        lookupExecutor.setCorePoolSize(workerCount);
+        lookupExecutor.setMaxPoolSize(workerCount);
+        lookupExecutor.setQueueCapacity(workerCount);
+        lookupExecutor.setThreadNamePrefix("lookup-");
+        lookupExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return lookupExecutor;
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:8}") int poolSize) {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(poolSize);
+        taskScheduler.setThreadNamePrefix("scheduled-");
+        taskScheduler.setWaitForTasksToCompleteOnShutdown(true);
+        taskScheduler.setAwaitTerminationSeconds(10);
+        return taskScheduler;
+    }
 }
@@ -0,0 +1,63 @@
+package com.cyanelix.railwatch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class FirebaseConfiguration {
+    @Value("${firebase.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${firebase.http.connect-timeout:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${firebase.http.read-timeout:5000}")
+    private int readTimeoutMillis;
+
+    @Value("${firebase.http.pool-acquire-timeout:1000}")
+    private int poolAcquireTimeoutMillis;
+
+    @Value("${firebase.http.idle-timeout:30000}")
+    private long idleTimeoutMillis;
+
+    @Bean
+    public PoolingHttpClientConnectionManager firebaseConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        meterRegistry.gauge("railwatch.firebase.pool.leased", connectionManager, pool -> pool.getTotalStats().getLeased());
+        meterRegistry.gauge("railwatch.firebase.pool.available", connectionManager, pool -> pool.getTotalStats().getAvailable());
+        meterRegistry.gauge("railwatch.firebase.pool.pending", connectionManager, pool -> pool.getTotalStats().getPending());
+        meterRegistry.gauge("railwatch.firebase.pool.max", connectionManager, pool -> pool.getTotalStats().getMax());
+
+        return connectionManager;
+    }
+
+    @Bean
+    public ClientHttpRequestFactory firebaseRequestFactory(PoolingHttpClientConnectionManager firebaseConnectionManager) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(firebaseConnectionManager)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(readTimeoutMillis);
+        requestFactory.setConnectionRequestTimeout(poolAcquireTimeoutMillis);
+        return requestFactory;
+    }
+}
@@ -1,13 +1,13 @@
 package com.cyanelix.railwatch.controller;
 
 import com.cyanelix.railwatch.domain.Station;
-import com.cyanelix.railwatch.domain.TrainTime;
 import com.cyanelix.railwatch.dto.TrainTimeDTO;
 import com.cyanelix.railwatch.service.TrainTimesService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -21,10 +21,10 @@ public class DeparturesController {
     }
 
     @GetMapping
-    public List<TrainTimeDTO> get(@RequestParam("from") String fromStation, @RequestParam("to") String toStation) {
-        List<TrainTime> trainTimes = trainTimesService.lookupTrainTimes(Station.of(fromStation), Station.of(toStation));
-        return trainTimes.parallelStream()
-                .map(TrainTimeDTO::new)
-                .collect(Collectors.toList());
+    public CompletableFuture<List<TrainTimeDTO>> get(@RequestParam("from") String fromStation, @RequestParam("to") String toStation) {
+        return trainTimesService.lookupTrainTimesAsync(Station.of(fromStation), Station.of(toStation))
+                .thenApply(trainTimes -> trainTimes.stream()
+                        .map(TrainTimeDTO::new)
+                        .collect(Collectors.toList()));
     }
 }
@@ -7,11 +7,14 @@ import com.cyanelix.railwatch.service.ScheduleService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @RestController
@@ -21,18 +24,20 @@ public class SchedulesController {
 
     private final ScheduleService scheduleService;
     private final ConversionService conversionService;
+    private final Executor readExecutor;
 
     @Autowired
-    public SchedulesController(ScheduleService scheduleService, ConversionService conversionService) {
+    public SchedulesController(ScheduleService scheduleService, ConversionService conversionService, @Qualifier("readExecutor") Executor readExecutor) {
         this.scheduleService = scheduleService;
         this.conversionService = conversionService;
+        this.readExecutor = readExecutor;
     }
 
     @GetMapping
-    public List<ScheduleDTO> get() {
-        return scheduleService.getSchedules().stream()
+    public CompletableFuture<List<ScheduleDTO>> get() {
+        return CompletableFuture.supplyAsync(() -> scheduleService.getSchedules().stream()
                 .map(schedule -> conversionService.convert(schedule, ScheduleDTO.class))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()), readExecutor);
     }
 
     @PutMapping
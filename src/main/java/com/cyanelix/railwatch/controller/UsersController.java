@@ -11,6 +11,7 @@ import com.cyanelix.railwatch.entity.User;
 import com.cyanelix.railwatch.service.ScheduleService;
 import com.cyanelix.railwatch.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -20,6 +21,8 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @RestController
@@ -28,17 +31,34 @@ public class UsersController {
     private final UserService userService;
     private final ScheduleService scheduleService;
     private final ConversionService conversionService;
+    private final Executor readExecutor;
 
     @Autowired
-    public UsersController(UserService userService, ScheduleService scheduleService, ConversionService conversionService) {
+    public UsersController(UserService userService, ScheduleService scheduleService, ConversionService conversionService, @Qualifier("readExecutor") Executor readExecutor) {
         this.userService = userService;
         this.scheduleService = scheduleService;
         this.conversionService = conversionService;
+        this.readExecutor = readExecutor;
     }
 
     @GetMapping(path = "/{userId}")
-    public FullUserDetailsDTO getUser(@PathVariable("userId") String userId) {
-        User user = userService.getUser(UserId.of(userId));
+    public CompletableFuture<FullUserDetailsDTO> getUser(@PathVariable("userId") String userId) {
+        UserId id = UserId.of(userId);
+        return CompletableFuture.supplyAsync(() -> getFullUserDetails(id), readExecutor);
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public ResponseEntity<Void> create(@RequestBody @Valid UserDTO userDTO, UriComponentsBuilder uriComponentsBuilder) {
+        User user = userService.createUser(NotificationTarget.of(userDTO.getNotificationTarget()));
+
+        UriComponents uriComponents = uriComponentsBuilder.path("/users/{id}").buildAndExpand(user.getUserId().get());
+
+        return ResponseEntity.created(uriComponents.toUri()).build();
+    }
+
+    private FullUserDetailsDTO getFullUserDetails(UserId userId) {
+        User user = userService.getUser(userId);
         if (user == null) {
             throw new ResourceNotFoundException();
         }
@@ -53,14 +73,4 @@ public class UsersController {
 
         return new FullUserDetailsDTO(userDTO, scheduleDTOS);
     }
-
-    @PostMapping
-    @ResponseStatus(HttpStatus.CREATED)
-    public ResponseEntity<Void> create(@RequestBody @Valid UserDTO userDTO, UriComponentsBuilder uriComponentsBuilder) {
-        User user = userService.createUser(NotificationTarget.of(userDTO.getNotificationTarget()));
-
-        UriComponents uriComponents = uriComponentsBuilder.path("/users/{id}").buildAndExpand(user.getUserId().get());
-
-        return ResponseEntity.created(uriComponents.toUri()).build();
-    }
 }
@@ -0,0 +1,77 @@
+package com.cyanelix.railwatch.domain;
+
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public final class BoardChange {
+    private final TrainTime trainTime;
+    private final Set<BoardChangeType> types;
+
+    private BoardChange(TrainTime trainTime, Set<BoardChangeType> types) {
+        this.trainTime = trainTime;
+        this.types = Collections.unmodifiableSet(types);
+    }
+
+    public static List<BoardChange> between(List<TrainTime> previousTrainTimes, List<TrainTime> currentTrainTimes) {
+        Map<LocalTime, TrainTime> previousByScheduledTime = previousTrainTimes.stream()
+                .collect(Collectors.toMap(TrainTime::getScheduledDepartureTime, Function.identity(), (first, second) -> first));
+
+        return currentTrainTimes.stream()
+                .map(current -> new BoardChange(current, classify(previousByScheduledTime.get(current.getScheduledDepartureTime()), current)))
+                .filter(change -> !change.types.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static Set<BoardChangeType> classify(TrainTime previous, TrainTime current) {
+        Set<BoardChangeType> types = EnumSet.noneOf(BoardChangeType.class);
+
+        if (previous == null) {
+            if (current.isCancelled()) {
+                types.add(BoardChangeType.CANCELLED);
+            } else if (!current.isOnTime()) {
+                types.add(BoardChangeType.DELAYED);
+            }
+            return types;
+        }
+
+        if (current.isCancelled()) {
+            if (!previous.isCancelled()) {
+                types.add(BoardChangeType.CANCELLED);
+            }
+        } else if (current.isOnTime()) {
+            if (!previous.isOnTime()) {
+                types.add(BoardChangeType.RECOVERED);
+            }
+        } else if (!Objects.equals(previous.getExpectedDepartureTime(), current.getExpectedDepartureTime())
+                || !Objects.equals(previous.getMessage(), current.getMessage())) {
+            types.add(BoardChangeType.DELAYED);
+        }
+
+        if (!Objects.equals(previous.getPlatformNumber(), current.getPlatformNumber())) {
+            types.add(BoardChangeType.PLATFORM_CHANGED);
+        }
+
+        if (previous.getFormation() != current.getFormation()) {
+            types.add(BoardChangeType.FORMATION_CHANGED);
+        }
+
+        return types;
+    }
+
+    public TrainTime getTrainTime() {
+        return trainTime;
+    }
+
+    public Set<BoardChangeType> getTypes() {
+        return types;
+    }
+
+    @Override
+    public String toString() {
+        return trainTime.toString() + " (" + types.stream()
+                .map(BoardChangeType::getDescription)
+                .collect(Collectors.joining(", ")) + ")";
+    }
+}
@@ -0,0 +1,15 @@
+package com.cyanelix.railwatch.domain;
+
+public enum BoardChangeType {
+    DELAYED("delayed"), RECOVERED("on time"), CANCELLED("cancelled"), PLATFORM_CHANGED("platform change"), FORMATION_CHANGED("formation change");
+
+    private String description;
+
+    private BoardChangeType(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -36,6 +36,12 @@ public final class DayRange {
         return days.contains(day);
     }
 
+    public int toDayMask() {
+        return days.stream()
+                .mapToInt(day -> 1 << day.ordinal())
+                .reduce(0, (mask, dayBit) -> mask | dayBit);
+    }
+
     public Set<DayOfWeek> getDays() {
         return days;
     }
@@ -0,0 +1,46 @@
+package com.cyanelix.railwatch.domain;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public final class MinuteOfWeek {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final int dayBit;
+    private final int minuteOfDay;
+
+    private MinuteOfWeek(int dayIndex, int minuteOfDay) {
+        this.dayBit = 1 << dayIndex;
+        this.minuteOfDay = minuteOfDay;
+    }
+
+    public static MinuteOfWeek of(LocalDateTime dateTime) {
+        return new MinuteOfWeek(dateTime.getDayOfWeek().ordinal(), dateTime.getHour() * 60 + dateTime.getMinute());
+    }
+
+    public int getDayBit() {
+        return dayBit;
+    }
+
+    public int getMinuteOfDay() {
+        return minuteOfDay;
+    }
+
+    public int getMinuteOfWeek() {
+        return Integer.numberOfTrailingZeros(dayBit) * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MinuteOfWeek that = (MinuteOfWeek) o;
+        return dayBit == that.dayBit &&
+                minuteOfDay == that.minuteOfDay;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dayBit, minuteOfDay);
+    }
+}
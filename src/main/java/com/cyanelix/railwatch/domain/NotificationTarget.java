@@ -26,6 +26,10 @@ public final class NotificationTarget {
         return Objects.hash(targetAddress);
     }
 
+    public boolean isTopic() {
+        return targetAddress != null && targetAddress.startsWith(NotificationTopic.ADDRESS_PREFIX);
+    }
+
     public String getTargetAddress() {
         return targetAddress;
     }
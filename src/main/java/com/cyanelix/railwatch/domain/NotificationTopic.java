@@ -0,0 +1,56 @@
+package com.cyanelix.railwatch.domain;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+public final class NotificationTopic {
+    public static final String ADDRESS_PREFIX = "/topics/";
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HHmm");
+
+    private final String name;
+
+    private NotificationTopic(String name) {
+        this.name = Objects.requireNonNull(name);
+    }
+
+    public static NotificationTopic of(String name) {
+        return new NotificationTopic(name);
+    }
+
+    public static NotificationTopic of(Journey journey, DayRange dayRange, LocalTime startTime, LocalTime endTime) {
+        return new NotificationTopic(String.format("journey-%s-%s-%s-%s-%02x",
+                journey.getFrom().getStationCode(),
+                journey.getTo().getStationCode(),
+                startTime.format(TIME_FORMATTER),
+                endTime.format(TIME_FORMATTER),
+                dayRange.toDayMask()));
+    }
+
+    public NotificationTarget toNotificationTarget() {
+        return NotificationTarget.of(ADDRESS_PREFIX + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NotificationTopic that = (NotificationTopic) o;
+        return Objects.equals(name, that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
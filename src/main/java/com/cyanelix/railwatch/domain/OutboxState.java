@@ -0,0 +1,5 @@
+package com.cyanelix.railwatch.domain;
+
+public enum OutboxState {
+    PENDING, CLAIMED, SENT, FAILED
+}
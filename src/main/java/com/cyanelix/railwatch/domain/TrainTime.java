@@ -6,6 +6,7 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 
 public class TrainTime {
+    private static final String CANCELLED_MESSAGE = "Cancelled";
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
 
     private final LocalTime scheduledDepartureTime;
@@ -46,6 +47,10 @@ public class TrainTime {
         return expectedDepartureTime != null && scheduledDepartureTime.equals(expectedDepartureTime);
     }
 
+    public boolean isCancelled() {
+        return CANCELLED_MESSAGE.equalsIgnoreCase(message);
+    }
+
     public String toString() {
         return String.format("%s%s%s", getTimeRepresentation(), getPlatformRepresentation(), getFormationRepresentation());
     }
@@ -0,0 +1,56 @@
+package com.cyanelix.railwatch.entity;
+
+import com.cyanelix.railwatch.domain.Formation;
+import com.cyanelix.railwatch.domain.TrainTime;
+
+import java.time.LocalTime;
+
+public final class BoardTrainTime {
+    private final LocalTime scheduledDepartureTime;
+    private final LocalTime expectedDepartureTime;
+    private final String message;
+    private final Formation formation;
+    private final Integer platformNumber;
+
+    public BoardTrainTime(LocalTime scheduledDepartureTime, LocalTime expectedDepartureTime, String message, Formation formation, Integer platformNumber) {
+        this.scheduledDepartureTime = scheduledDepartureTime;
+        this.expectedDepartureTime = expectedDepartureTime;
+        this.message = message;
+        this.formation = formation;
+        this.platformNumber = platformNumber;
+    }
+
+    public static BoardTrainTime of(TrainTime trainTime) {
+        return new BoardTrainTime(trainTime.getScheduledDepartureTime(), trainTime.getExpectedDepartureTime(),
+                trainTime.getMessage(), trainTime.getFormation(), trainTime.getPlatformNumber());
+    }
+
+    public TrainTime toTrainTime() {
+        return new TrainTime.Builder(scheduledDepartureTime)
+                .withExpectedDepartureTime(expectedDepartureTime)
+                .withMessage(message)
+                .withFormation(formation)
+                .withPlatformNumber(platformNumber)
+                .build();
+    }
+
+    public LocalTime getScheduledDepartureTime() {
+        return scheduledDepartureTime;
+    }
+
+    public LocalTime getExpectedDepartureTime() {
+        return expectedDepartureTime;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    public Integer getPlatformNumber() {
+        return platformNumber;
+    }
+}
@@ -0,0 +1,43 @@
+package com.cyanelix.railwatch.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Document
+@CompoundIndex(name = "notificationTarget_day", def = "{'notificationTarget': 1, 'day': 1}", unique = true)
+public class DailyUserActivity {
+    @Id
+    private String id;
+
+    private String notificationTarget;
+    private LocalDate day;
+    private long notificationsSent;
+    private LocalDateTime lastHeartbeat;
+
+    public DailyUserActivity(String notificationTarget, LocalDate day, long notificationsSent, LocalDateTime lastHeartbeat) {
+        this.notificationTarget = notificationTarget;
+        this.day = day;
+        this.notificationsSent = notificationsSent;
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    public String getNotificationTarget() {
+        return notificationTarget;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public long getNotificationsSent() {
+        return notificationsSent;
+    }
+
+    public LocalDateTime getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+}
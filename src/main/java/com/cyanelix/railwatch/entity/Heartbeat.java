@@ -2,11 +2,13 @@ package com.cyanelix.railwatch.entity;
 
 import com.cyanelix.railwatch.domain.NotificationTarget;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Document
+@CompoundIndex(name = "notificationTarget_dateTime", def = "{'notificationTarget.targetAddress': 1, 'dateTime': -1}")
 public final class Heartbeat {
     @Id
     private String id;
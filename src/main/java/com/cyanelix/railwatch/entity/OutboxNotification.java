@@ -0,0 +1,141 @@
+package com.cyanelix.railwatch.entity;
+
+import com.cyanelix.railwatch.domain.Journey;
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.OutboxState;
+import com.cyanelix.railwatch.domain.TrainTime;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Document
+@CompoundIndex(name = "state_createdDateTime", def = "{'state': 1, 'createdDateTime': 1}")
+public class OutboxNotification {
+    @Id
+    private String id;
+
+    private String to;
+    private String title;
+    private String body;
+    private String journey;
+    private String contentHash;
+    private List<BoardTrainTime> trainTimes;
+    private LocalTime windowStart;
+    private LocalDateTime createdDateTime;
+
+    private OutboxState state;
+    private String owner;
+    private LocalDateTime claimedDateTime;
+    private int attempts;
+
+    private LocalDateTime sentDateTime;
+    private LocalDateTime completedDateTime;
+
+    public OutboxNotification(String to, String title, String body, String journey, String contentHash, LocalDateTime createdDateTime) {
+        this.to = to;
+        this.title = title;
+        this.body = body;
+        this.journey = journey;
+        this.contentHash = contentHash;
+        this.createdDateTime = createdDateTime;
+        this.state = OutboxState.PENDING;
+    }
+
+    public static OutboxNotification of(NotificationRequest notificationRequest, LocalDateTime createdDateTime) {
+        return new OutboxNotification(
+                notificationRequest.getTo(),
+                notificationRequest.getNotification().getTitle(),
+                notificationRequest.getNotification().getBody(),
+                null,
+                SentNotification.contentHashOf(notificationRequest),
+                createdDateTime);
+    }
+
+    public static OutboxNotification of(NotificationRequest notificationRequest, Journey journey, String boardHash, List<TrainTime> trainTimes,
+                                        LocalTime windowStart, LocalDateTime createdDateTime) {
+        OutboxNotification outboxNotification = new OutboxNotification(
+                notificationRequest.getTo(),
+                notificationRequest.getNotification().getTitle(),
+                notificationRequest.getNotification().getBody(),
+                journey.toString(),
+                boardHash,
+                createdDateTime);
+        outboxNotification.trainTimes = trainTimes.stream()
+                .map(BoardTrainTime::of)
+                .collect(Collectors.toList());
+        outboxNotification.windowStart = windowStart;
+        return outboxNotification;
+    }
+
+    public NotificationRequest toNotificationRequest() {
+        return new NotificationRequest(NotificationTarget.of(to), title, body);
+    }
+
+    public SentNotification toSentNotification(LocalDateTime sentDateTime) {
+        return SentNotification.of(toNotificationRequest(), journey, contentHash, sentDateTime);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public String getJourney() {
+        return journey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public List<TrainTime> getTrainTimes() {
+        if (trainTimes == null) {
+            return null;
+        }
+
+        return trainTimes.stream()
+                .map(BoardTrainTime::toTrainTime)
+                .collect(Collectors.toList());
+    }
+
+    public LocalTime getWindowStart() {
+        return windowStart;
+    }
+
+    public LocalDateTime getCreatedDateTime() {
+        return createdDateTime;
+    }
+
+    public OutboxState getState() {
+        return state;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public LocalDateTime getCompletedDateTime() {
+        return completedDateTime;
+    }
+}
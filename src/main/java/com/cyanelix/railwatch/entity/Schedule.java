@@ -2,19 +2,26 @@ package com.cyanelix.railwatch.entity;
 
 import com.cyanelix.railwatch.domain.DayRange;
 import com.cyanelix.railwatch.domain.Journey;
+import com.cyanelix.railwatch.domain.MinuteOfWeek;
+import com.cyanelix.railwatch.domain.NotificationTopic;
 import com.cyanelix.railwatch.domain.ScheduleState;
 import com.cyanelix.railwatch.domain.Station;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.annotation.PersistenceConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
-import java.time.DayOfWeek;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
 @Document
+@CompoundIndexes({
+        @CompoundIndex(name = "user_userId", def = "{'user.userId': 1}"),
+        @CompoundIndex(name = "state_startMinute_endMinute", def = "{'state': 1, 'startMinute': 1, 'endMinute': 1}")
+})
 public final class Schedule {
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
 
@@ -28,10 +35,18 @@ public final class Schedule {
     private Station toStation;
     private ScheduleState state;
 
-    @DBRef
-    private User user;
+    private UserSnapshot user;
+
+    private byte dayMask;
+    private short startMinute;
+    private short endMinute;
 
     public Schedule(LocalTime startTime, LocalTime endTime, DayRange dayRange, Station fromStation, Station toStation, ScheduleState state, User user) {
+        this(startTime, endTime, dayRange, fromStation, toStation, state, user == null ? null : UserSnapshot.of(user));
+    }
+
+    @PersistenceConstructor
+    private Schedule(LocalTime startTime, LocalTime endTime, DayRange dayRange, Station fromStation, Station toStation, ScheduleState state, UserSnapshot user) {
         this.startTime = startTime;
         this.endTime = endTime;
         this.dayRange = dayRange;
@@ -39,6 +54,8 @@ public final class Schedule {
         this.toStation = toStation;
         this.state = state;
         this.user = user;
+
+        deriveActivationFields();
     }
 
     public String getId() {
@@ -73,27 +90,64 @@ public final class Schedule {
         this.state = state;
     }
 
-    public User getUser() {
+    public UserSnapshot getUser() {
         return user;
     }
 
     public void setUser(User user) {
-        this.user = user;
+        this.user = UserSnapshot.of(user);
+    }
+
+    public int getDayMask() {
+        return dayMask;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
     }
 
     public String getNotificationTarget() {
         return user.getNotificationTarget();
     }
 
+    public NotificationTopic getNotificationTopic() {
+        return NotificationTopic.of(Journey.of(fromStation, toStation), dayRange, startTime, endTime);
+    }
+
     public boolean isActive(LocalDateTime testDateTime) {
-        DayOfWeek dayOfWeek = testDateTime.getDayOfWeek();
-        LocalTime testTime = testDateTime.toLocalTime();
+        return isActive(MinuteOfWeek.of(testDateTime));
+    }
+
+    public boolean isActive(MinuteOfWeek minuteOfWeek) {
+        int minuteOfDay = minuteOfWeek.getMinuteOfDay();
+        return (dayMask & minuteOfWeek.getDayBit()) != 0
+                && startMinute <= minuteOfDay
+                && minuteOfDay < endMinute;
+    }
+
+    private void deriveActivationFields() {
+        if (dayRange != null) {
+            this.dayMask = (byte) dayRange.toDayMask();
+        }
+        if (startTime != null) {
+            this.startMinute = (short) startMinuteOf(startTime);
+        }
+        if (endTime != null) {
+            this.endMinute = (short) endMinuteOf(endTime);
+        }
+    }
 
-        return dayRange.contains(dayOfWeek) && timeWithinRange(testTime);
+    public static int startMinuteOf(LocalTime startTime) {
+        return startTime.getHour() * 60 + startTime.getMinute();
     }
 
-    private boolean timeWithinRange(LocalTime testTime) {
-        return startTime.isBefore(testTime) && endTime.isAfter(testTime);
+    public static int endMinuteOf(LocalTime endTime) {
+        int endMinute = endTime.getHour() * 60 + endTime.getMinute();
+        return endTime.getSecond() == 0 && endTime.getNano() == 0 ? endMinute : endMinute + 1;
     }
 
     public String toString() {
@@ -0,0 +1,33 @@
+package com.cyanelix.railwatch.entity;
+
+import java.time.LocalDateTime;
+
+public final class SentBoard {
+    private final String to;
+    private final String journey;
+    private final String contentHash;
+    private final LocalDateTime sentDateTime;
+
+    public SentBoard(String to, String journey, String contentHash, LocalDateTime sentDateTime) {
+        this.to = to;
+        this.journey = journey;
+        this.contentHash = contentHash;
+        this.sentDateTime = sentDateTime;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getJourney() {
+        return journey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public LocalDateTime getSentDateTime() {
+        return sentDateTime;
+    }
+}
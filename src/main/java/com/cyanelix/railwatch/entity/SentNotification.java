@@ -1,12 +1,18 @@
 package com.cyanelix.railwatch.entity;
 
+import com.cyanelix.railwatch.domain.Journey;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Document
+@CompoundIndex(name = "to_day_contentHash", def = "{'to': 1, 'day': 1, 'contentHash': 1}")
 public class SentNotification {
     @Id
     private String id;
@@ -16,6 +22,9 @@ public class SentNotification {
     private String body;
     private String priority;
     private LocalDateTime sentDateTime;
+    private LocalDate day;
+    private String contentHash;
+    private String journey;
 
     public SentNotification(String to, String title, String body, String priority, LocalDateTime sentDateTime) {
         this.to = to;
@@ -23,6 +32,8 @@ public class SentNotification {
         this.body = body;
         this.priority = priority;
         this.sentDateTime = sentDateTime;
+        this.day = sentDateTime == null ? null : sentDateTime.toLocalDate();
+        this.contentHash = contentHashOf(title, body, priority);
     }
 
     public static SentNotification of(NotificationRequest notificationRequest, LocalDateTime sentDateTime) {
@@ -34,6 +45,29 @@ public class SentNotification {
                 sentDateTime);
     }
 
+    public static SentNotification of(NotificationRequest notificationRequest, Journey journey, String boardHash, LocalDateTime sentDateTime) {
+        return of(notificationRequest, journey.toString(), boardHash, sentDateTime);
+    }
+
+    public static SentNotification of(NotificationRequest notificationRequest, String journey, String contentHash, LocalDateTime sentDateTime) {
+        SentNotification sentNotification = of(notificationRequest, sentDateTime);
+        sentNotification.journey = journey;
+        sentNotification.contentHash = contentHash;
+        return sentNotification;
+    }
+
+    public static String contentHashOf(NotificationRequest notificationRequest) {
+        return contentHashOf(
+                notificationRequest.getNotification().getTitle(),
+                notificationRequest.getNotification().getBody(),
+                notificationRequest.getPriority());
+    }
+
+    private static String contentHashOf(String title, String body, String priority) {
+        String content = String.join("\n", String.valueOf(title), String.valueOf(body), String.valueOf(priority));
+        return DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8));
+    }
+
     public String getTo() {
         return to;
     }
@@ -49,4 +83,20 @@ public class SentNotification {
     public String getBody() {
         return body;
     }
+
+    public LocalDateTime getSentDateTime() {
+        return sentDateTime;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public String getJourney() {
+        return journey;
+    }
 }
@@ -0,0 +1,30 @@
+package com.cyanelix.railwatch.entity;
+
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
+import com.cyanelix.railwatch.domain.NotificationTarget;
+
+import java.time.LocalDateTime;
+
+public final class StaleHeartbeat {
+    private final String notificationTarget;
+    private final LocalDateTime lastHeartbeat;
+    private final HeartbeatStatus status;
+
+    public StaleHeartbeat(String notificationTarget, LocalDateTime lastHeartbeat, HeartbeatStatus status) {
+        this.notificationTarget = notificationTarget;
+        this.lastHeartbeat = lastHeartbeat;
+        this.status = status;
+    }
+
+    public NotificationTarget getNotificationTarget() {
+        return NotificationTarget.of(notificationTarget);
+    }
+
+    public LocalDateTime getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    public HeartbeatStatus getStatus() {
+        return status;
+    }
+}
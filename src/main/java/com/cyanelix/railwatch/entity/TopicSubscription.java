@@ -0,0 +1,34 @@
+package com.cyanelix.railwatch.entity;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.NotificationTopic;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document
+@CompoundIndex(name = "topic_notificationTarget", def = "{'topic': 1, 'notificationTarget': 1}", unique = true)
+public class TopicSubscription {
+    @Id
+    private String id;
+
+    private String topic;
+    private String notificationTarget;
+
+    public TopicSubscription(String topic, String notificationTarget) {
+        this.topic = topic;
+        this.notificationTarget = notificationTarget;
+    }
+
+    public static TopicSubscription of(NotificationTopic topic, NotificationTarget notificationTarget) {
+        return new TopicSubscription(topic.getName(), notificationTarget.getTargetAddress());
+    }
+
+    public NotificationTopic getTopic() {
+        return NotificationTopic.of(topic);
+    }
+
+    public NotificationTarget getNotificationTarget() {
+        return NotificationTarget.of(notificationTarget);
+    }
+}
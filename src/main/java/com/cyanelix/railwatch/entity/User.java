@@ -3,12 +3,15 @@ package com.cyanelix.railwatch.entity;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Document
+@CompoundIndex(name = "userState_lastHeartbeat", def = "{'userState': 1, 'lastHeartbeat': 1}")
 public final class User {
     @Id
     private String id;
@@ -21,6 +24,8 @@ public final class User {
 
     private UserState userState;
 
+    private LocalDateTime lastHeartbeat;
+
     public User() {
         // Required by spring-data
     }
@@ -47,6 +52,10 @@ public final class User {
         this.userState = userState;
     }
 
+    public LocalDateTime getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,21 @@
+package com.cyanelix.railwatch.entity;
+
+import java.time.LocalDateTime;
+
+public final class UserHeartbeat {
+    private final String notificationTarget;
+    private final LocalDateTime lastHeartbeat;
+
+    public UserHeartbeat(String notificationTarget, LocalDateTime lastHeartbeat) {
+        this.notificationTarget = notificationTarget;
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    public String getNotificationTarget() {
+        return notificationTarget;
+    }
+
+    public LocalDateTime getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+}
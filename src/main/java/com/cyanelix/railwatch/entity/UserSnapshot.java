@@ -0,0 +1,49 @@
+package com.cyanelix.railwatch.entity;
+
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
+
+import java.util.Objects;
+
+public final class UserSnapshot {
+    private final UserId userId;
+    private final String notificationTarget;
+    private final UserState userState;
+
+    private UserSnapshot(UserId userId, String notificationTarget, UserState userState) {
+        this.userId = userId;
+        this.notificationTarget = notificationTarget;
+        this.userState = userState;
+    }
+
+    public static UserSnapshot of(User user) {
+        return new UserSnapshot(user.getUserId(), user.getNotificationTarget(), user.getUserState());
+    }
+
+    public UserId getUserId() {
+        return userId;
+    }
+
+    public String getNotificationTarget() {
+        return notificationTarget;
+    }
+
+    public UserState getUserState() {
+        return userState;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UserSnapshot that = (UserSnapshot) o;
+        return Objects.equals(userId, that.userId) &&
+                Objects.equals(notificationTarget, that.notificationTarget) &&
+                userState == that.userState;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, notificationTarget, userState);
+    }
+}
@@ -1,44 +1,117 @@
 package com.cyanelix.railwatch.firebase.client;
 
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.NotificationTopic;
+import com.cyanelix.railwatch.firebase.client.entity.MulticastNotificationRequest;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationResponse;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionRequest;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionResponse;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionResult;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Component
 public class FirebaseClient {
+    public static final int MAX_BATCH_SIZE = 1000;
+
     private final RestTemplate restTemplate;
     private final URI baseUrl;
+    private final URI subscribeUrl;
+    private final URI unsubscribeUrl;
     private final HttpHeaders httpHeaders;
 
-    public FirebaseClient(RestTemplateBuilder restTemplateBuilder, @Value("${firebase.url}") String baseUrl, @Value("${firebase.authorization.key}") String authorizationKey) throws URISyntaxException {
-        this.restTemplate = restTemplateBuilder.build();
+    public FirebaseClient(RestTemplateBuilder restTemplateBuilder, @Qualifier("firebaseRequestFactory") ObjectProvider<ClientHttpRequestFactory> requestFactory,
+                          @Value("${firebase.url}") String baseUrl, @Value("${firebase.authorization.key}") String authorizationKey,
+                          @Value("${firebase.iid.url:https://iid.googleapis.com/iid/v1}") String instanceIdUrl) throws URISyntaxException {
+        ClientHttpRequestFactory pooledRequestFactory = requestFactory.getIfAvailable();
+        this.restTemplate = pooledRequestFactory == null
+                ? restTemplateBuilder.build()
+                : restTemplateBuilder.requestFactory(() -> pooledRequestFactory).build();
         this.baseUrl = new URI(baseUrl);
+        this.subscribeUrl = new URI(instanceIdUrl + ":batchAdd");
+        this.unsubscribeUrl = new URI(instanceIdUrl + ":batchRemove");
 
         httpHeaders = new HttpHeaders();
         httpHeaders.add(HttpHeaders.AUTHORIZATION, String.format("key=%s", authorizationKey));
     }
 
-    public boolean sendNotification(NotificationRequest notificationRequest) {
+    public NotificationResult send(NotificationRequest notificationRequest) {
         RequestEntity<NotificationRequest> requestEntity = new RequestEntity<>(notificationRequest, httpHeaders, HttpMethod.POST, baseUrl);
 
         ResponseEntity<NotificationResponse> notificationResponse = restTemplate.exchange(requestEntity, NotificationResponse.class);
 
-        return isSuccess(notificationResponse);
+        if (!notificationResponse.getStatusCode().is2xxSuccessful() || !notificationResponse.hasBody()) {
+            return new NotificationResult(null, "MissingResult");
+        }
+
+        return notificationResponse.getBody().getFirstResult();
+    }
+
+    public Map<NotificationTarget, NotificationResult> sendMulticast(NotificationRequest template, Collection<NotificationTarget> notificationTargets) {
+        List<NotificationTarget> targets = new ArrayList<>(notificationTargets);
+        Map<NotificationTarget, NotificationResult> results = new LinkedHashMap<>();
+
+        for (int from = 0; from < targets.size(); from += MAX_BATCH_SIZE) {
+            List<NotificationTarget> batch = targets.subList(from, Math.min(from + MAX_BATCH_SIZE, targets.size()));
+            RequestEntity<MulticastNotificationRequest> requestEntity = new RequestEntity<>(new MulticastNotificationRequest(template, batch), httpHeaders, HttpMethod.POST, baseUrl);
+
+            ResponseEntity<NotificationResponse> notificationResponse = restTemplate.exchange(requestEntity, NotificationResponse.class);
+
+            List<NotificationResult> batchResults = notificationResponse.hasBody() ? notificationResponse.getBody().getResults() : Collections.emptyList();
+            for (int i = 0; i < batch.size(); i++) {
+                results.put(batch.get(i), i < batchResults.size() ? batchResults.get(i) : new NotificationResult(null, "MissingResult"));
+            }
+        }
+
+        return results;
     }
 
-    private boolean isSuccess(ResponseEntity<NotificationResponse> notificationResponse) {
-        return notificationResponse.getStatusCode().is2xxSuccessful()
-                && notificationResponse.hasBody()
-                && notificationResponse.getBody().getSuccess() == 1;
+    public Map<NotificationTarget, TopicSubscriptionResult> subscribe(NotificationTopic topic, Collection<NotificationTarget> notificationTargets) {
+        return sendTopicBatches(subscribeUrl, topic, notificationTargets);
+    }
+
+    public Map<NotificationTarget, TopicSubscriptionResult> unsubscribe(NotificationTopic topic, Collection<NotificationTarget> notificationTargets) {
+        return sendTopicBatches(unsubscribeUrl, topic, notificationTargets);
+    }
+
+    private Map<NotificationTarget, TopicSubscriptionResult> sendTopicBatches(URI url, NotificationTopic topic, Collection<NotificationTarget> notificationTargets) {
+        List<NotificationTarget> targets = new ArrayList<>(notificationTargets);
+        Map<NotificationTarget, TopicSubscriptionResult> results = new LinkedHashMap<>();
+
+        for (int from = 0; from < targets.size(); from += MAX_BATCH_SIZE) {
+            List<NotificationTarget> batch = targets.subList(from, Math.min(from + MAX_BATCH_SIZE, targets.size()));
+            RequestEntity<TopicSubscriptionRequest> requestEntity = new RequestEntity<>(new TopicSubscriptionRequest(topic, batch), httpHeaders, HttpMethod.POST, url);
+
+            ResponseEntity<TopicSubscriptionResponse> topicSubscriptionResponse = restTemplate.exchange(requestEntity, TopicSubscriptionResponse.class);
+
+            List<TopicSubscriptionResult> batchResults = topicSubscriptionResponse.getStatusCode().is2xxSuccessful() && topicSubscriptionResponse.hasBody()
+                    ? topicSubscriptionResponse.getBody().getResults()
+                    : Collections.emptyList();
+            for (int i = 0; i < batch.size(); i++) {
+                results.put(batch.get(i), i < batchResults.size() ? batchResults.get(i) : new TopicSubscriptionResult("MissingResult"));
+            }
+        }
+
+        return results;
     }
 }
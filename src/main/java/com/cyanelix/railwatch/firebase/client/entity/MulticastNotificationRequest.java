@@ -0,0 +1,36 @@
+package com.cyanelix.railwatch.firebase.client.entity;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MulticastNotificationRequest {
+    @JsonProperty("registration_ids")
+    private final List<String> registrationIds;
+
+    private final NotificationRequest.Notification notification;
+    private final String priority;
+
+    public MulticastNotificationRequest(NotificationRequest template, Collection<NotificationTarget> notificationTargets) {
+        this.registrationIds = notificationTargets.stream()
+                .map(NotificationTarget::getTargetAddress)
+                .collect(Collectors.toList());
+        this.notification = template.getNotification();
+        this.priority = template.getPriority();
+    }
+
+    public List<String> getRegistrationIds() {
+        return registrationIds;
+    }
+
+    public NotificationRequest.Notification getNotification() {
+        return notification;
+    }
+
+    public String getPriority() {
+        return priority;
+    }
+}
@@ -1,7 +1,18 @@
 package com.cyanelix.railwatch.firebase.client.entity;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
 public class NotificationResponse {
     private int success;
+    private int failure;
+    private List<NotificationResult> results = Collections.emptyList();
+
+    @JsonProperty("message_id")
+    private String messageId;
+    private String error;
 
     public NotificationResponse() {
         // Default constructor required for Jackson.
@@ -14,4 +25,48 @@ public class NotificationResponse {
     public void setSuccess(int success) {
         this.success = success;
     }
+
+    public int getFailure() {
+        return failure;
+    }
+
+    public void setFailure(int failure) {
+        this.failure = failure;
+    }
+
+    public List<NotificationResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<NotificationResult> results) {
+        this.results = results;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public NotificationResult getFirstResult() {
+        if (!results.isEmpty()) {
+            return results.get(0);
+        }
+
+        if (messageId != null || error != null) {
+            return new NotificationResult(messageId, error);
+        }
+
+        return success == 1 ? NotificationResult.success() : new NotificationResult(null, "MissingResult");
+    }
 }
@@ -0,0 +1,53 @@
+package com.cyanelix.railwatch.firebase.client.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class NotificationResult {
+    private static final Set<String> UNREGISTERED_ERRORS = new HashSet<>(Arrays.asList("NotRegistered", "InvalidRegistration"));
+
+    @JsonProperty("message_id")
+    private String messageId;
+
+    private String error;
+
+    @JsonIgnore
+    private boolean acknowledged;
+
+    public NotificationResult() {
+        // Default constructor required for Jackson.
+    }
+
+    public NotificationResult(String messageId, String error) {
+        this.messageId = messageId;
+        this.error = error;
+    }
+
+    public static NotificationResult success() {
+        NotificationResult result = new NotificationResult();
+        result.acknowledged = true;
+        return result;
+    }
+
+    @JsonIgnore
+    public boolean isSuccess() {
+        return (messageId != null || acknowledged) && error == null;
+    }
+
+    @JsonIgnore
+    public boolean isUnregistered() {
+        return UNREGISTERED_ERRORS.contains(error);
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
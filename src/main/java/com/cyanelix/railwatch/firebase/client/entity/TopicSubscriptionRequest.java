@@ -0,0 +1,31 @@
+package com.cyanelix.railwatch.firebase.client.entity;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.NotificationTopic;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TopicSubscriptionRequest {
+    private final String to;
+
+    @JsonProperty("registration_tokens")
+    private final List<String> registrationTokens;
+
+    public TopicSubscriptionRequest(NotificationTopic topic, Collection<NotificationTarget> notificationTargets) {
+        this.to = topic.toNotificationTarget().getTargetAddress();
+        this.registrationTokens = notificationTargets.stream()
+                .map(NotificationTarget::getTargetAddress)
+                .collect(Collectors.toList());
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public List<String> getRegistrationTokens() {
+        return registrationTokens;
+    }
+}
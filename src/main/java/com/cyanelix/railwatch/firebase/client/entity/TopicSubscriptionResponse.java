@@ -0,0 +1,20 @@
+package com.cyanelix.railwatch.firebase.client.entity;
+
+import java.util.Collections;
+import java.util.List;
+
+public class TopicSubscriptionResponse {
+    private List<TopicSubscriptionResult> results = Collections.emptyList();
+
+    public TopicSubscriptionResponse() {
+        // Default constructor required for Jackson.
+    }
+
+    public List<TopicSubscriptionResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<TopicSubscriptionResult> results) {
+        this.results = results;
+    }
+}
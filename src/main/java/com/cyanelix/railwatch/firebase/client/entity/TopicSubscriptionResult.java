@@ -0,0 +1,35 @@
+package com.cyanelix.railwatch.firebase.client.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class TopicSubscriptionResult {
+    private static final Set<String> INVALID_TARGET_ERRORS = new HashSet<>(Arrays.asList("NOT_FOUND", "INVALID_ARGUMENT"));
+
+    private String error;
+
+    public TopicSubscriptionResult() {
+        // Default constructor required for Jackson.
+    }
+
+    public TopicSubscriptionResult(String error) {
+        this.error = error;
+    }
+
+    @JsonIgnore
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @JsonIgnore
+    public boolean isInvalidTarget() {
+        return INVALID_TARGET_ERRORS.contains(error);
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,11 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.DailyUserActivity;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyUserActivityRepository extends MongoRepository<DailyUserActivity, String>, DailyUserActivityRepositoryCustom {
+    List<DailyUserActivity> findByNotificationTargetAndDayBetween(String notificationTarget, LocalDate from, LocalDate to);
+}
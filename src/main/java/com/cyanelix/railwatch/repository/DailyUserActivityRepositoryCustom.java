@@ -0,0 +1,11 @@
+package com.cyanelix.railwatch.repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public interface DailyUserActivityRepositoryCustom {
+    int rollUp(LocalDate day);
+
+    void recordHeartbeats(Map<String, LocalDateTime> heartbeats);
+}
@@ -0,0 +1,63 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.DailyUserActivity;
+import com.cyanelix.railwatch.entity.SentNotification;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class DailyUserActivityRepositoryImpl implements DailyUserActivityRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public DailyUserActivityRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int rollUp(LocalDate day) {
+        List<Document> notificationCounts = mongoTemplate.aggregate(newAggregation(SentNotification.class,
+                match(where("sentDateTime").gte(day.atStartOfDay()).lt(day.plusDays(1).atStartOfDay())),
+                group("to").count().as("notificationsSent")), Document.class)
+                .getMappedResults();
+
+        if (notificationCounts.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyUserActivity.class);
+        notificationCounts.forEach(notificationCount -> bulkOperations.upsert(forTargetAndDay(notificationCount.getString("_id"), day),
+                new Update().set("notificationsSent", notificationCount.get("notificationsSent"))));
+        bulkOperations.execute();
+
+        return notificationCounts.size();
+    }
+
+    @Override
+    public void recordHeartbeats(Map<String, LocalDateTime> heartbeats) {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyUserActivity.class);
+        heartbeats.forEach((notificationTarget, heartbeatDateTime) -> bulkOperations.upsert(forTargetAndDay(notificationTarget, heartbeatDateTime.toLocalDate()),
+                new Update().max("lastHeartbeat", heartbeatDateTime).setOnInsert("notificationsSent", 0L)));
+        bulkOperations.execute();
+    }
+
+    private Query forTargetAndDay(String notificationTarget, LocalDate day) {
+        return new Query(Criteria.where("notificationTarget").is(notificationTarget).and("day").is(day));
+    }
+}
@@ -4,6 +4,6 @@ import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.entity.Heartbeat;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-public interface HeartbeatRepository extends MongoRepository<Heartbeat, String> {
+public interface HeartbeatRepository extends MongoRepository<Heartbeat, String>, HeartbeatRepositoryCustom {
     Heartbeat findFirstByNotificationTargetEqualsOrderByDateTimeDesc(NotificationTarget notificationTarget);
 }
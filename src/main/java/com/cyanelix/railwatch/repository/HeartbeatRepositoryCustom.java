@@ -0,0 +1,11 @@
+package com.cyanelix.railwatch.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public interface HeartbeatRepositoryCustom {
+    void recordSamples(Map<String, LocalDateTime> heartbeats, Duration sampleInterval);
+
+    void ensureRetention(Duration retention);
+}
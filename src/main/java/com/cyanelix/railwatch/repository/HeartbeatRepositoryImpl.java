@@ -0,0 +1,52 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.Heartbeat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+public class HeartbeatRepositoryImpl implements HeartbeatRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public HeartbeatRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void recordSamples(Map<String, LocalDateTime> heartbeats, Duration sampleInterval) {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Heartbeat.class);
+        heartbeats.forEach((notificationTarget, dateTime) -> {
+            LocalDateTime sampleStart = sampleStart(dateTime, sampleInterval);
+            bulkOperations.upsert(
+                    new Query(Criteria.where("notificationTarget.targetAddress").is(notificationTarget)
+                            .and("dateTime").gte(sampleStart).lt(sampleStart.plus(sampleInterval))),
+                    new Update().setOnInsert("dateTime", dateTime));
+        });
+
+        bulkOperations.execute();
+    }
+
+    @Override
+    public void ensureRetention(Duration retention) {
+        TtlIndexes.ensure(mongoTemplate, Heartbeat.class, "dateTime", retention);
+    }
+
+    private LocalDateTime sampleStart(LocalDateTime dateTime, Duration sampleInterval) {
+        long epochMillis = dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis - epochMillis % sampleInterval.toMillis()), ZoneOffset.UTC);
+    }
+}
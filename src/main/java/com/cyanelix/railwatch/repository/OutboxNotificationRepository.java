@@ -0,0 +1,7 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OutboxNotificationRepository extends MongoRepository<OutboxNotification, String>, OutboxNotificationRepositoryCustom {
+}
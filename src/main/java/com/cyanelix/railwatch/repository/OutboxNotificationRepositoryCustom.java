@@ -0,0 +1,20 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.OutboxNotification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxNotificationRepositoryCustom {
+    List<OutboxNotification> claimBatch(String owner, int batchSize, LocalDateTime claimedDateTime, LocalDateTime staleClaimBefore);
+
+    void markSent(String owner, Collection<String> ids, LocalDateTime sentDateTime);
+
+    void release(String owner, Collection<String> ids);
+
+    void markFailed(String owner, Collection<String> ids, LocalDateTime failedDateTime);
+
+    void ensureRetention(Duration retention);
+}
@@ -0,0 +1,98 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.OutboxState;
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class OutboxNotificationRepositoryImpl implements OutboxNotificationRepositoryCustom {
+    private static final String LEGACY_TTL_INDEX = "sentDateTime";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public OutboxNotificationRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<OutboxNotification> claimBatch(String owner, int batchSize, LocalDateTime claimedDateTime, LocalDateTime staleClaimBefore) {
+        Query claimable = new Query(new Criteria().orOperator(
+                Criteria.where("state").is(OutboxState.PENDING),
+                Criteria.where("state").is(OutboxState.CLAIMED).and("claimedDateTime").lt(staleClaimBefore)))
+                .with(Sort.by("createdDateTime"));
+        Update claim = new Update()
+                .set("state", OutboxState.CLAIMED)
+                .set("owner", owner)
+                .set("claimedDateTime", claimedDateTime)
+                .inc("attempts", 1);
+
+        List<OutboxNotification> claimed = new ArrayList<>();
+        while (claimed.size() < batchSize) {
+            OutboxNotification outboxNotification = mongoTemplate.findAndModify(claimable, claim,
+                    FindAndModifyOptions.options().returnNew(true), OutboxNotification.class);
+            if (outboxNotification == null) {
+                break;
+            }
+
+            claimed.add(outboxNotification);
+        }
+
+        return claimed;
+    }
+
+    @Override
+    public void markSent(String owner, Collection<String> ids, LocalDateTime sentDateTime) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and("owner").is(owner)),
+                new Update().set("state", OutboxState.SENT).set("sentDateTime", sentDateTime).set("completedDateTime", sentDateTime).unset("owner"),
+                OutboxNotification.class);
+    }
+
+    @Override
+    public void release(String owner, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and("owner").is(owner)),
+                new Update().set("state", OutboxState.PENDING).unset("owner").unset("claimedDateTime"),
+                OutboxNotification.class);
+    }
+
+    @Override
+    public void markFailed(String owner, Collection<String> ids, LocalDateTime failedDateTime) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("id").in(ids).and("owner").is(owner)),
+                new Update().set("state", OutboxState.FAILED).set("completedDateTime", failedDateTime).unset("owner").unset("claimedDateTime"),
+                OutboxNotification.class);
+    }
+
+    @Override
+    public void ensureRetention(Duration retention) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(OutboxNotification.class);
+        if (indexOperations.getIndexInfo().stream().anyMatch(index -> LEGACY_TTL_INDEX.equals(index.getName()))) {
+            indexOperations.dropIndex(LEGACY_TTL_INDEX);
+        }
+
+        TtlIndexes.ensure(mongoTemplate, OutboxNotification.class, "completedDateTime", retention);
+    }
+}
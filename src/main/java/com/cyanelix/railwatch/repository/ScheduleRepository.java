@@ -1,13 +1,13 @@
 package com.cyanelix.railwatch.repository;
 
 import com.cyanelix.railwatch.domain.ScheduleState;
+import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.entity.Schedule;
-import com.cyanelix.railwatch.entity.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import java.util.List;
 
-public interface ScheduleRepository extends MongoRepository<Schedule, String> {
+public interface ScheduleRepository extends MongoRepository<Schedule, String>, ScheduleRepositoryCustom {
     List<Schedule> findByStateIs(ScheduleState scheduleState);
-    List<Schedule> findByUser(User user);
+    List<Schedule> findByUserUserId(UserId userId);
 }
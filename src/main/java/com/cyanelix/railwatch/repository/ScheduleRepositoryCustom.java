@@ -0,0 +1,19 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.MinuteOfWeek;
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.Schedule;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ScheduleRepositoryCustom {
+    int updateUserState(Collection<UserId> userIds, UserState userState);
+
+    int embedUserSnapshots();
+
+    int backfillActivationFields();
+
+    List<Schedule> findActiveAt(MinuteOfWeek minuteOfWeek);
+}
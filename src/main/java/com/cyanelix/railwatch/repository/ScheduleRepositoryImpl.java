@@ -0,0 +1,118 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.MinuteOfWeek;
+import com.cyanelix.railwatch.domain.ScheduleState;
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.User;
+import com.mongodb.DBRef;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class ScheduleRepositoryImpl implements ScheduleRepositoryCustom {
+    private static final int LAST_MINUTE_OF_DAY = 24 * 60 - 1;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ScheduleRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public int updateUserState(Collection<UserId> userIds, UserState userState) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+
+        return (int) mongoTemplate.updateMulti(
+                new Query(Criteria.where("user.userId").in(userIds).and("user.userState").ne(userState)),
+                new Update().set("user.userState", userState),
+                Schedule.class).getModifiedCount();
+    }
+
+    @Override
+    public int embedUserSnapshots() {
+        String scheduleCollection = mongoTemplate.getCollectionName(Schedule.class);
+
+        List<Document> schedules = mongoTemplate.getCollection(scheduleCollection)
+                .find(Filters.exists("user.$id"))
+                .projection(Projections.include("user"))
+                .into(new ArrayList<>());
+        if (schedules.isEmpty()) {
+            return 0;
+        }
+
+        List<Object> referencedIds = schedules.stream()
+                .map(schedule -> referencedId(schedule.get("user")))
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Object, Document> usersById = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .find(Filters.in("_id", referencedIds))
+                .projection(Projections.include("userId", "notificationTarget", "userState"))
+                .into(new ArrayList<>()).stream()
+                .collect(Collectors.toMap(user -> user.get("_id"), Function.identity()));
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, scheduleCollection);
+        schedules.forEach(schedule -> {
+            Document user = usersById.get(referencedId(schedule.get("user")));
+            Query byId = new Query(Criteria.where("_id").is(schedule.get("_id")));
+            if (user == null) {
+                bulkOperations.updateOne(byId, new Update().unset("user"));
+            } else {
+                bulkOperations.updateOne(byId, new Update().set("user", new Document("userId", user.get("userId"))
+                        .append("notificationTarget", user.get("notificationTarget"))
+                        .append("userState", user.get("userState"))));
+            }
+        });
+
+        return bulkOperations.execute().getModifiedCount();
+    }
+
+    @Override
+    public int backfillActivationFields() {
+        List<Schedule> schedules = mongoTemplate.find(new Query(new Criteria().orOperator(
+                Criteria.where("dayMask").exists(false),
+                Criteria.where("endMinute").is(LAST_MINUTE_OF_DAY))), Schedule.class);
+        if (schedules.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Schedule.class);
+        schedules.forEach(schedule -> bulkOperations.updateOne(
+                new Query(Criteria.where("id").is(schedule.getId())),
+                new Update().set("dayMask", schedule.getDayRange().toDayMask())
+                        .set("startMinute", Schedule.startMinuteOf(schedule.getStartTime()))
+                        .set("endMinute", Schedule.endMinuteOf(schedule.getEndTime()))));
+
+        return bulkOperations.execute().getModifiedCount();
+    }
+
+    @Override
+    public List<Schedule> findActiveAt(MinuteOfWeek minuteOfWeek) {
+        return mongoTemplate.find(new Query(Criteria.where("state").is(ScheduleState.ENABLED)
+                .and("startMinute").lte(minuteOfWeek.getMinuteOfDay())
+                .and("endMinute").gt(minuteOfWeek.getMinuteOfDay())
+                .and("dayMask").is(new Document("$bitsAllSet", minuteOfWeek.getDayBit()))
+                .and("user.userState").is(UserState.ENABLED)), Schedule.class);
+    }
+
+    private static Object referencedId(Object reference) {
+        return reference instanceof DBRef ? ((DBRef) reference).getId() : ((Document) reference).get("$id");
+    }
+}
@@ -1,11 +1,15 @@
 package com.cyanelix.railwatch.repository;
 
+import com.cyanelix.railwatch.entity.SentBoard;
 import com.cyanelix.railwatch.entity.SentNotification;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public interface SentNotificationRepository extends MongoRepository<SentNotification, String> {
-    List<SentNotification> findBySentDateTimeAfter(LocalDateTime filter);
+public interface SentNotificationRepository extends MongoRepository<SentNotification, String>, SentNotificationRepositoryCustom {
+    List<SentBoard> findBySentDateTimeAfterAndJourneyIsNotNull(LocalDateTime filter);
+
+    boolean existsByToAndDayAndContentHash(String to, LocalDate day, String contentHash);
 }
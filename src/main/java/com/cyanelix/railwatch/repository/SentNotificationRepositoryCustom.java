@@ -0,0 +1,7 @@
+package com.cyanelix.railwatch.repository;
+
+import java.time.Duration;
+
+public interface SentNotificationRepositoryCustom {
+    void ensureRetention(Duration retention);
+}
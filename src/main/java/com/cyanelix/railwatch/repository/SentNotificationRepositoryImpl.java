@@ -0,0 +1,21 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.SentNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+
+public class SentNotificationRepositoryImpl implements SentNotificationRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public SentNotificationRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void ensureRetention(Duration retention) {
+        TtlIndexes.ensure(mongoTemplate, SentNotification.class, "sentDateTime", retention);
+    }
+}
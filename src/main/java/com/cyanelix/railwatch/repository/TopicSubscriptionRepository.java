@@ -0,0 +1,10 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.TopicSubscription;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.Collection;
+
+public interface TopicSubscriptionRepository extends MongoRepository<TopicSubscription, String> {
+    long deleteByTopicAndNotificationTargetIn(String topic, Collection<String> notificationTargets);
+}
@@ -0,0 +1,41 @@
+package com.cyanelix.railwatch.repository;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.time.Duration;
+import java.util.Objects;
+
+final class TtlIndexes {
+    private TtlIndexes() {
+    }
+
+    static void ensure(MongoTemplate mongoTemplate, Class<?> entityClass, String field, Duration retention) {
+        String collectionName = mongoTemplate.getCollectionName(entityClass);
+        String indexName = field + "_ttl";
+
+        Document existing = null;
+        for (Document index : mongoTemplate.getCollection(collectionName).listIndexes()) {
+            if (indexName.equals(index.getString("name"))) {
+                existing = index;
+            }
+        }
+
+        if (existing == null) {
+            mongoTemplate.indexOps(entityClass).ensureIndex(new Index()
+                    .on(field, Sort.Direction.ASC)
+                    .named(indexName)
+                    .expire(retention.getSeconds()));
+        } else if (!Objects.equals(toLong(existing.get("expireAfterSeconds")), retention.getSeconds())) {
+            mongoTemplate.executeCommand(new Document("collMod", collectionName)
+                    .append("index", new Document("keyPattern", new Document(field, 1))
+                            .append("expireAfterSeconds", retention.getSeconds())));
+        }
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
@@ -3,14 +3,17 @@ package com.cyanelix.railwatch.repository;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
 import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.entity.UserHeartbeat;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import java.util.stream.Stream;
 
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom {
     User findByUserId(UserId userId);
 
     User findByNotificationTarget(String notificationTarget);
 
     Stream<User> findByUserStateIs(UserState userState);
+
+    Stream<UserHeartbeat> findByUserStateIsAndLastHeartbeatIsNotNull(UserState userState);
 }
@@ -0,0 +1,21 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.entity.StaleHeartbeat;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface UserRepositoryCustom {
+    List<UserId> disableByNotificationTargets(Collection<String> notificationTargets);
+
+    int recordHeartbeats(Map<String, LocalDateTime> heartbeats);
+
+    int backfillLastHeartbeats();
+
+    List<StaleHeartbeat> findStaleHeartbeatsOfEnabledUsers(LocalDateTime warnBefore, LocalDateTime disableBefore);
+
+    List<StaleHeartbeat> findStaleHeartbeatsOfEnabledUsers(Collection<String> notificationTargets, LocalDateTime warnBefore, LocalDateTime disableBefore);
+}
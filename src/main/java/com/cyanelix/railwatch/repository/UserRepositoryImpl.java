@@ -0,0 +1,145 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.Heartbeat;
+import com.cyanelix.railwatch.entity.StaleHeartbeat;
+import com.cyanelix.railwatch.entity.User;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+    static final String MIGRATIONS_COLLECTION = "migrations";
+    static final String BACKFILL_MIGRATION = "backfill-last-heartbeats";
+    private static final int BACKFILL_CHUNK_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public UserRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<UserId> disableByNotificationTargets(Collection<String> notificationTargets) {
+        if (notificationTargets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Query enabledUsers = new Query(Criteria.where("notificationTarget").in(notificationTargets).and("userState").is(UserState.ENABLED));
+        enabledUsers.fields().include("userId");
+        List<UserId> userIds = mongoTemplate.find(enabledUsers, User.class).stream()
+                .map(User::getUserId)
+                .collect(Collectors.toList());
+
+        if (!userIds.isEmpty()) {
+            mongoTemplate.updateMulti(enabledUsers, new Update().set("userState", UserState.DISABLED), User.class);
+        }
+
+        return userIds;
+    }
+
+    @Override
+    public int recordHeartbeats(Map<String, LocalDateTime> heartbeats) {
+        return advanceLastHeartbeats(heartbeats);
+    }
+
+    @Override
+    public int backfillLastHeartbeats() {
+        Query backfillCompleted = new Query(Criteria.where("_id").is(BACKFILL_MIGRATION));
+        if (mongoTemplate.exists(backfillCompleted, MIGRATIONS_COLLECTION)) {
+            return 0;
+        }
+
+        Query usersWithoutHeartbeat = new Query(Criteria.where("lastHeartbeat").is(null));
+        usersWithoutHeartbeat.fields().include("notificationTarget");
+
+        int backfilled = 0;
+        List<String> notificationTargets = new ArrayList<>(BACKFILL_CHUNK_SIZE);
+        try (CloseableIterator<User> users = mongoTemplate.stream(usersWithoutHeartbeat, User.class)) {
+            while (users.hasNext()) {
+                notificationTargets.add(users.next().getNotificationTarget());
+                if (notificationTargets.size() == BACKFILL_CHUNK_SIZE) {
+                    backfilled += backfillLastHeartbeats(notificationTargets);
+                    notificationTargets.clear();
+                }
+            }
+        }
+        backfilled += backfillLastHeartbeats(notificationTargets);
+
+        mongoTemplate.save(new Document("_id", BACKFILL_MIGRATION).append("completedDateTime", new Date()), MIGRATIONS_COLLECTION);
+        return backfilled;
+    }
+
+    @Override
+    public List<StaleHeartbeat> findStaleHeartbeatsOfEnabledUsers(LocalDateTime warnBefore, LocalDateTime disableBefore) {
+        return findStaleHeartbeats(Criteria.where("userState").is(UserState.ENABLED).and("lastHeartbeat").lt(warnBefore), disableBefore);
+    }
+
+    @Override
+    public List<StaleHeartbeat> findStaleHeartbeatsOfEnabledUsers(Collection<String> notificationTargets, LocalDateTime warnBefore, LocalDateTime disableBefore) {
+        return findStaleHeartbeats(Criteria.where("notificationTarget").in(notificationTargets)
+                .and("userState").is(UserState.ENABLED).and("lastHeartbeat").lt(warnBefore), disableBefore);
+    }
+
+    private List<StaleHeartbeat> findStaleHeartbeats(Criteria criteria, LocalDateTime disableBefore) {
+        Query staleUsers = new Query(criteria);
+        staleUsers.fields().include("notificationTarget").include("lastHeartbeat");
+
+        return mongoTemplate.find(staleUsers, User.class).stream()
+                .map(user -> new StaleHeartbeat(user.getNotificationTarget(), user.getLastHeartbeat(),
+                        user.getLastHeartbeat().isBefore(disableBefore) ? HeartbeatStatus.DISABLE : HeartbeatStatus.WARN))
+                .collect(Collectors.toList());
+    }
+
+    private int backfillLastHeartbeats(List<String> notificationTargets) {
+        if (notificationTargets.isEmpty()) {
+            return 0;
+        }
+
+        Aggregation aggregation = newAggregation(
+                match(Criteria.where("notificationTarget.targetAddress").in(notificationTargets)),
+                group("notificationTarget.targetAddress").max("dateTime").as("lastHeartbeat"))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        Map<String, Object> latestHeartbeats = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Heartbeat.class), Document.class)
+                .getMappedResults().stream()
+                .collect(Collectors.toMap(latestHeartbeat -> latestHeartbeat.getString("_id"), latestHeartbeat -> latestHeartbeat.get("lastHeartbeat")));
+
+        return advanceLastHeartbeats(latestHeartbeats);
+    }
+
+    private int advanceLastHeartbeats(Map<String, ?> heartbeats) {
+        if (heartbeats.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        heartbeats.forEach((notificationTarget, heartbeatDateTime) -> bulkOperations.updateOne(
+                new Query(Criteria.where("notificationTarget").is(notificationTarget)
+                        .orOperator(Criteria.where("lastHeartbeat").is(null), Criteria.where("lastHeartbeat").lt(heartbeatDateTime))),
+                new Update().set("lastHeartbeat", heartbeatDateTime)));
+
+        return bulkOperations.execute().getModifiedCount();
+    }
+}
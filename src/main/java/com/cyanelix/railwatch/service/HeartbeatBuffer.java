@@ -0,0 +1,114 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.repository.DailyUserActivityRepository;
+import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+public class HeartbeatBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(HeartbeatBuffer.class);
+
+    private final UserRepository userRepository;
+    private final HeartbeatRepository heartbeatRepository;
+    private final DailyUserActivityRepository dailyUserActivityRepository;
+    private final int maximumSize;
+    private final boolean historyEnabled;
+    private final Duration historySampleInterval;
+
+    private final Map<String, LocalDateTime> pendingHeartbeats = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor();
+
+    @Autowired
+    public HeartbeatBuffer(UserRepository userRepository, HeartbeatRepository heartbeatRepository,
+                           DailyUserActivityRepository dailyUserActivityRepository, MeterRegistry meterRegistry,
+                           @Value("${heartbeats.buffer.maximum-size:5000}") int maximumSize,
+                           @Value("${heartbeats.history.enabled:true}") boolean historyEnabled,
+                           @Value("${heartbeats.history.sample-interval:3600000}") long historySampleIntervalMillis) {
+        this.userRepository = userRepository;
+        this.heartbeatRepository = heartbeatRepository;
+        this.dailyUserActivityRepository = dailyUserActivityRepository;
+        this.maximumSize = maximumSize;
+        this.historyEnabled = historyEnabled;
+        this.historySampleInterval = Duration.ofMillis(historySampleIntervalMillis);
+
+        meterRegistry.gauge("railwatch.heartbeats.buffer.size", pendingHeartbeats, Map::size);
+    }
+
+    public void record(String notificationTarget, LocalDateTime heartbeatDateTime) {
+        pendingHeartbeats.merge(notificationTarget, heartbeatDateTime, HeartbeatBuffer::latest);
+
+        if (pendingHeartbeats.size() >= maximumSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${heartbeats.buffer.flush-interval:5000}")
+    public synchronized void flush() {
+        Map<String, LocalDateTime> heartbeats = new HashMap<>();
+        for (String notificationTarget : pendingHeartbeats.keySet()) {
+            LocalDateTime heartbeatDateTime = pendingHeartbeats.remove(notificationTarget);
+            if (heartbeatDateTime != null) {
+                heartbeats.put(notificationTarget, heartbeatDateTime);
+            }
+        }
+
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+
+        try {
+            int updated = userRepository.recordHeartbeats(heartbeats);
+            dailyUserActivityRepository.recordHeartbeats(heartbeats);
+            if (historyEnabled) {
+                heartbeatRepository.recordSamples(heartbeats, historySampleInterval);
+            }
+
+            LOG.debug("Flushed {} buffered heartbeats, {} users updated.", heartbeats.size(), updated);
+        } catch (DataAccessException e) {
+            LOG.warn("Failed to flush {} buffered heartbeats, will retry.", heartbeats.size(), e);
+            heartbeats.forEach((notificationTarget, heartbeatDateTime) ->
+                    pendingHeartbeats.merge(notificationTarget, heartbeatDateTime, HeartbeatBuffer::latest));
+        }
+    }
+
+    public int size() {
+        return pendingHeartbeats.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+    }
+
+    private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+}
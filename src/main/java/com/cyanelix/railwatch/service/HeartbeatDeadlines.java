@@ -0,0 +1,124 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+final class HeartbeatDeadlines {
+    private final Duration warnThreshold;
+    private final Duration disableThreshold;
+
+    private final Map<String, Deadline> deadlinesByTarget = new HashMap<>();
+    private final NavigableSet<Deadline> deadlines = new TreeSet<>(
+            Comparator.comparing(Deadline::getDateTime).thenComparing(Deadline::getNotificationTarget));
+
+    HeartbeatDeadlines(Duration warnThreshold, Duration disableThreshold) {
+        this.warnThreshold = warnThreshold;
+        this.disableThreshold = disableThreshold;
+    }
+
+    synchronized void heartbeat(String notificationTarget, LocalDateTime lastHeartbeat) {
+        Deadline current = deadlinesByTarget.get(notificationTarget);
+        if (current == null || current.lastHeartbeat.isBefore(lastHeartbeat)) {
+            replace(current, new Deadline(notificationTarget, lastHeartbeat, HeartbeatStatus.WARN, lastHeartbeat.plus(warnThreshold)));
+        }
+    }
+
+    synchronized void restore(String notificationTarget, LocalDateTime lastHeartbeat, LocalDateTime now) {
+        Deadline current = deadlinesByTarget.get(notificationTarget);
+        if (current != null && !current.lastHeartbeat.isBefore(lastHeartbeat)) {
+            return;
+        }
+
+        if (lastHeartbeat.plus(warnThreshold).isBefore(now)) {
+            replace(current, new Deadline(notificationTarget, lastHeartbeat, HeartbeatStatus.DISABLE, lastHeartbeat.plus(disableThreshold)));
+        } else {
+            replace(current, new Deadline(notificationTarget, lastHeartbeat, HeartbeatStatus.WARN, lastHeartbeat.plus(warnThreshold)));
+        }
+    }
+
+    synchronized void warned(Deadline deadline) {
+        if (deadlinesByTarget.get(deadline.notificationTarget) == deadline) {
+            replace(deadline, new Deadline(deadline.notificationTarget, deadline.lastHeartbeat, HeartbeatStatus.DISABLE,
+                    deadline.lastHeartbeat.plus(disableThreshold)));
+        }
+    }
+
+    synchronized void remove(Deadline deadline) {
+        if (deadlinesByTarget.get(deadline.notificationTarget) == deadline) {
+            replace(deadline, null);
+        }
+    }
+
+    synchronized List<Deadline> due(LocalDateTime now) {
+        List<Deadline> due = new ArrayList<>();
+        for (Deadline deadline : deadlines) {
+            if (!deadline.dateTime.isBefore(now)) {
+                break;
+            }
+
+            due.add(deadline);
+        }
+
+        return due;
+    }
+
+    synchronized Optional<LocalDateTime> next() {
+        return deadlines.isEmpty() ? Optional.empty() : Optional.of(deadlines.first().dateTime);
+    }
+
+    synchronized int size() {
+        return deadlinesByTarget.size();
+    }
+
+    private void replace(Deadline current, Deadline replacement) {
+        if (current != null) {
+            deadlines.remove(current);
+            deadlinesByTarget.remove(current.notificationTarget);
+        }
+
+        if (replacement != null) {
+            deadlines.add(replacement);
+            deadlinesByTarget.put(replacement.notificationTarget, replacement);
+        }
+    }
+
+    static final class Deadline {
+        private final String notificationTarget;
+        private final LocalDateTime lastHeartbeat;
+        private final HeartbeatStatus status;
+        private final LocalDateTime dateTime;
+
+        private Deadline(String notificationTarget, LocalDateTime lastHeartbeat, HeartbeatStatus status, LocalDateTime dateTime) {
+            this.notificationTarget = notificationTarget;
+            this.lastHeartbeat = lastHeartbeat;
+            this.status = status;
+            this.dateTime = dateTime;
+        }
+
+        String getNotificationTarget() {
+            return notificationTarget;
+        }
+
+        LocalDateTime getLastHeartbeat() {
+            return lastHeartbeat;
+        }
+
+        HeartbeatStatus getStatus() {
+            return status;
+        }
+
+        LocalDateTime getDateTime() {
+            return dateTime;
+        }
+    }
+}
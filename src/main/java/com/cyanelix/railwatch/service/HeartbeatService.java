@@ -1,68 +1,202 @@
 package com.cyanelix.railwatch.service;
 
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
 import com.cyanelix.railwatch.domain.NotificationTarget;
-import com.cyanelix.railwatch.entity.Heartbeat;
-import com.cyanelix.railwatch.entity.User;
-import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.StaleHeartbeat;
+import com.cyanelix.railwatch.entity.UserHeartbeat;
+import com.cyanelix.railwatch.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
 public class HeartbeatService {
+    private static final Logger LOG = LoggerFactory.getLogger(HeartbeatService.class);
     private static final Duration WARN_THRESHOLD = Duration.of(7L, ChronoUnit.DAYS);
     private static final Duration DISABLE_THRESHOLD = Duration.of(10L, ChronoUnit.DAYS);
+    private static final Duration RETRY_DELAY = Duration.of(1L, ChronoUnit.MINUTES);
+    private static final String WARNING_MESSAGE = "Open the RailWatch app to keep your train time notifications coming!";
 
     private final UserService userService;
     private final NotificationService notificationService;
-    private final HeartbeatRepository heartbeatRepository;
+    private final UserRepository userRepository;
+    private final HeartbeatBuffer heartbeatBuffer;
     private final Clock clock;
+    private final boolean incremental;
+
+    private final HeartbeatDeadlines heartbeatDeadlines = new HeartbeatDeadlines(WARN_THRESHOLD, DISABLE_THRESHOLD);
+    private final ScheduledExecutorService wakeUpScheduler = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> wakeUp;
+    private LocalDateTime wakeUpDateTime;
+    private LocalDateTime retryNotBefore;
 
     @Autowired
-    public HeartbeatService(UserService userService, NotificationService notificationService, HeartbeatRepository heartbeatRepository, Clock clock) {
+    public HeartbeatService(UserService userService, NotificationService notificationService, UserRepository userRepository,
+                            HeartbeatBuffer heartbeatBuffer, Clock clock,
+                            @Value("${heartbeats.incremental.enabled:true}") boolean incremental) {
         this.userService = userService;
         this.notificationService = notificationService;
-        this.heartbeatRepository = heartbeatRepository;
+        this.userRepository = userRepository;
+        this.heartbeatBuffer = heartbeatBuffer;
         this.clock = clock;
+        this.incremental = incremental;
+    }
+
+    @PostConstruct
+    public void load() {
+        int backfilled = userRepository.backfillLastHeartbeats();
+        LOG.debug("Backfilled last heartbeat of {} users from heartbeat history.", backfilled);
+
+        if (incremental) {
+            LocalDateTime now = LocalDateTime.now(clock);
+            try (Stream<UserHeartbeat> userHeartbeats = userRepository.findByUserStateIsAndLastHeartbeatIsNotNull(UserState.ENABLED)) {
+                userHeartbeats.forEach(userHeartbeat -> heartbeatDeadlines.restore(userHeartbeat.getNotificationTarget(), userHeartbeat.getLastHeartbeat(), now));
+            }
+
+            LOG.debug("Tracking heartbeat deadlines of {} users.", heartbeatDeadlines.size());
+            scheduleWakeUp();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        wakeUpScheduler.shutdownNow();
     }
 
     public void recordHeartbeat(NotificationTarget notificationTarget) {
-        Heartbeat heartbeat = new Heartbeat(notificationTarget, LocalDateTime.now(clock));
-        heartbeatRepository.save(heartbeat);
+        LocalDateTime now = LocalDateTime.now(clock);
+        heartbeatBuffer.record(notificationTarget.getTargetAddress(), now);
+
+        if (incremental) {
+            heartbeatDeadlines.heartbeat(notificationTarget.getTargetAddress(), now);
+            scheduleWakeUp();
+        }
     }
 
     @Scheduled(fixedDelay = 86400000L)
-    public void checkHeartbeats() {
-        getNotificationTargetsFilteredByHeartbeat(DISABLE_THRESHOLD)
-                .forEach(userService::disableUserByNotificationTarget);
-        getNotificationTargetsFilteredByHeartbeat(WARN_THRESHOLD)
-                .forEach(notificationTarget -> notificationService.sendNotification(notificationTarget, "Open the RailWatch app to keep your train time notifications coming!"));
+    public void scheduledCheckHeartbeats() {
+        if (!incremental) {
+            checkHeartbeats();
+        }
     }
 
-    private Stream<NotificationTarget> getNotificationTargetsFilteredByHeartbeat(Duration threshold) {
-        return userService.getEnabledUsers()
-                .map(User::getNotificationTarget)
-                .map(NotificationTarget::of)
-                .map(heartbeatRepository::findFirstByNotificationTargetEqualsOrderByDateTimeDesc)
-                .filter(heartbeatEntity -> heartbeatOlderThanThreshold(heartbeatEntity, threshold))
-                .map(Heartbeat::getNotificationTarget)
-                .distinct();
+    public void checkHeartbeats() {
+        heartbeatBuffer.flush();
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        Map<HeartbeatStatus, List<NotificationTarget>> notificationTargetsByStatus = userRepository
+                .findStaleHeartbeatsOfEnabledUsers(now.minus(WARN_THRESHOLD), now.minus(DISABLE_THRESHOLD)).stream()
+                .collect(Collectors.groupingBy(StaleHeartbeat::getStatus,
+                        Collectors.mapping(StaleHeartbeat::getNotificationTarget, Collectors.toList())));
+
+        userService.disableUsersByNotificationTargets(notificationTargetsByStatus.getOrDefault(HeartbeatStatus.DISABLE, Collections.emptyList()));
+        notificationService.sendNotifications(notificationTargetsByStatus.getOrDefault(HeartbeatStatus.WARN, Collections.emptyList()), WARNING_MESSAGE);
     }
 
-    private boolean heartbeatOlderThanThreshold(Heartbeat heartbeat, Duration duration) {
-        if (heartbeat == null) {
-            return false;
+    public void evaluateDeadlines() {
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpDateTime = null;
         }
 
         LocalDateTime now = LocalDateTime.now(clock);
-        LocalDateTime lastWeek = now.minus(duration);
+        try {
+            List<HeartbeatDeadlines.Deadline> dueDeadlines = heartbeatDeadlines.due(now);
+            if (!dueDeadlines.isEmpty()) {
+                heartbeatBuffer.flush();
+
+                List<String> notificationTargets = dueDeadlines.stream()
+                        .map(HeartbeatDeadlines.Deadline::getNotificationTarget)
+                        .collect(Collectors.toList());
+                Map<String, StaleHeartbeat> staleHeartbeats = userRepository
+                        .findStaleHeartbeatsOfEnabledUsers(notificationTargets, now.minus(WARN_THRESHOLD), now.minus(DISABLE_THRESHOLD)).stream()
+                        .collect(Collectors.toMap(staleHeartbeat -> staleHeartbeat.getNotificationTarget().getTargetAddress(), Function.identity()));
+
+                List<NotificationTarget> toDisable = new ArrayList<>();
+                List<NotificationTarget> toWarn = new ArrayList<>();
+                dueDeadlines.forEach(deadline -> evaluate(deadline, staleHeartbeats.get(deadline.getNotificationTarget()), now, toDisable, toWarn));
+
+                userService.disableUsersByNotificationTargets(toDisable);
+                notificationService.sendNotifications(toWarn, WARNING_MESSAGE);
+            }
+
+            setRetryNotBefore(null);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to evaluate heartbeat deadlines, retrying in {}.", RETRY_DELAY, e);
+            setRetryNotBefore(now.plus(RETRY_DELAY));
+        }
+
+        scheduleWakeUp();
+    }
+
+    Optional<LocalDateTime> getNextDeadline() {
+        return heartbeatDeadlines.next();
+    }
+
+    private void evaluate(HeartbeatDeadlines.Deadline deadline, StaleHeartbeat staleHeartbeat, LocalDateTime now,
+                          List<NotificationTarget> toDisable, List<NotificationTarget> toWarn) {
+        if (staleHeartbeat == null) {
+            heartbeatDeadlines.remove(deadline);
+        } else if (staleHeartbeat.getStatus() == HeartbeatStatus.DISABLE) {
+            toDisable.add(staleHeartbeat.getNotificationTarget());
+            heartbeatDeadlines.remove(deadline);
+        } else {
+            if (deadline.getStatus() == HeartbeatStatus.WARN) {
+                toWarn.add(staleHeartbeat.getNotificationTarget());
+            }
+
+            if (staleHeartbeat.getLastHeartbeat().isAfter(deadline.getLastHeartbeat())) {
+                heartbeatDeadlines.restore(deadline.getNotificationTarget(), staleHeartbeat.getLastHeartbeat(), now);
+            } else {
+                heartbeatDeadlines.warned(deadline);
+            }
+        }
+    }
+
+    private synchronized void setRetryNotBefore(LocalDateTime retryNotBefore) {
+        this.retryNotBefore = retryNotBefore;
+    }
+
+    private synchronized void scheduleWakeUp() {
+        Optional<LocalDateTime> nextDeadline = heartbeatDeadlines.next();
+        if (!nextDeadline.isPresent()) {
+            return;
+        }
+
+        LocalDateTime nextWakeUp = retryNotBefore != null && retryNotBefore.isAfter(nextDeadline.get()) ? retryNotBefore : nextDeadline.get();
+        if (wakeUpDateTime != null && !nextWakeUp.isBefore(wakeUpDateTime)) {
+            return;
+        }
+
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
 
-        return heartbeat.getDateTime().isBefore(lastWeek);
+        wakeUpDateTime = nextWakeUp;
+        long delay = Math.max(0L, Duration.between(LocalDateTime.now(clock), wakeUpDateTime).toMillis());
+        wakeUp = wakeUpScheduler.schedule(this::evaluateDeadlines, delay, TimeUnit.MILLISECONDS);
     }
 }
@@ -0,0 +1,144 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.Journey;
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.TrainTime;
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import com.cyanelix.railwatch.entity.SentBoard;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class LastSentBoardCache {
+    private static final Logger LOG = LoggerFactory.getLogger(LastSentBoardCache.class);
+
+    private final SentNotificationRepository sentNotificationRepository;
+    private final Clock clock;
+    private final Map<String, LastSentBoard> lastSentBoards;
+    private final Map<String, String> pendingFingerprints = new ConcurrentHashMap<>();
+
+    @Autowired
+    public LastSentBoardCache(SentNotificationRepository sentNotificationRepository, Clock clock, @Value("${notifications.board-cache.size:10000}") int maximumSize) {
+        this.sentNotificationRepository = sentNotificationRepository;
+        this.clock = clock;
+        this.lastSentBoards = new LinkedHashMap<String, LastSentBoard>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LastSentBoard> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void warm() {
+        sentNotificationRepository.findBySentDateTimeAfterAndJourneyIsNotNull(LocalDate.now(clock).atStartOfDay()).stream()
+                .sorted(Comparator.comparing(SentBoard::getSentDateTime))
+                .forEach(sentBoard -> put(sentBoard.getTo(), sentBoard.getJourney(),
+                        new LastSentBoard(sentBoard.getContentHash(), null, sentBoard.getSentDateTime().toLocalDate(), null)));
+
+        LOG.debug("Warmed last-sent board cache with {} entries.", size());
+    }
+
+    public LastSentBoard get(NotificationTarget notificationTarget, Journey journey) {
+        String key = toKey(notificationTarget.getTargetAddress(), journey.toString());
+        synchronized (lastSentBoards) {
+            LastSentBoard lastSentBoard = lastSentBoards.get(key);
+            if (lastSentBoard != null && !lastSentBoard.getDay().equals(LocalDate.now(clock))) {
+                lastSentBoards.remove(key);
+                return null;
+            }
+
+            return lastSentBoard;
+        }
+    }
+
+    public void put(NotificationTarget notificationTarget, Journey journey, String fingerprint) {
+        put(notificationTarget.getTargetAddress(), journey.toString(), new LastSentBoard(fingerprint, null, LocalDate.now(clock), null));
+    }
+
+    public void put(OutboxNotification sentNotification) {
+        pendingFingerprints.remove(toPendingKey(sentNotification), sentNotification.getContentHash());
+        put(sentNotification.getTo(), sentNotification.getJourney(), new LastSentBoard(sentNotification.getContentHash(), sentNotification.getTrainTimes(),
+                sentNotification.getCreatedDateTime().toLocalDate(), sentNotification.getWindowStart()));
+    }
+
+    public void markPending(NotificationTarget notificationTarget, Journey journey, String fingerprint) {
+        pendingFingerprints.put(toPendingKey(notificationTarget.getTargetAddress(), journey.toString(), LocalDate.now(clock)), fingerprint);
+    }
+
+    public boolean isPending(NotificationTarget notificationTarget, Journey journey, String fingerprint) {
+        return fingerprint.equals(pendingFingerprints.get(toPendingKey(notificationTarget.getTargetAddress(), journey.toString(), LocalDate.now(clock))));
+    }
+
+    public void failed(OutboxNotification failedNotification) {
+        pendingFingerprints.remove(toPendingKey(failedNotification), failedNotification.getContentHash());
+    }
+
+    public int size() {
+        synchronized (lastSentBoards) {
+            return lastSentBoards.size();
+        }
+    }
+
+    private void put(String notificationTarget, String journey, LastSentBoard lastSentBoard) {
+        synchronized (lastSentBoards) {
+            lastSentBoards.put(toKey(notificationTarget, journey), lastSentBoard);
+        }
+    }
+
+    private String toKey(String notificationTarget, String journey) {
+        return notificationTarget + "|" + journey;
+    }
+
+    private String toPendingKey(OutboxNotification outboxNotification) {
+        return toPendingKey(outboxNotification.getTo(), outboxNotification.getJourney(), outboxNotification.getCreatedDateTime().toLocalDate());
+    }
+
+    private String toPendingKey(String notificationTarget, String journey, LocalDate day) {
+        return toKey(notificationTarget, journey) + "|" + day;
+    }
+
+    public static final class LastSentBoard {
+        private final String fingerprint;
+        private final List<TrainTime> trainTimes;
+        private final LocalDate day;
+        private final LocalTime windowStart;
+
+        private LastSentBoard(String fingerprint, List<TrainTime> trainTimes, LocalDate day, LocalTime windowStart) {
+            this.fingerprint = fingerprint;
+            this.trainTimes = trainTimes;
+            this.day = day;
+            this.windowStart = windowStart;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public List<TrainTime> getTrainTimes() {
+            return trainTimes;
+        }
+
+        public LocalDate getDay() {
+            return day;
+        }
+
+        public boolean isFromWindow(LocalTime windowStart) {
+            return this.windowStart == null || this.windowStart.equals(windowStart);
+        }
+    }
+}
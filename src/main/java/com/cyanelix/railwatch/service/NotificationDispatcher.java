@@ -0,0 +1,179 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.firebase.client.FirebaseClient;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+@Component
+public class NotificationDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+    private static final NotificationResult DISPATCH_FAILED = new NotificationResult(null, "DispatchFailed");
+
+    private final FirebaseClient firebaseClient;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retryScheduler;
+
+    private final Timer sendTimer;
+    private final Counter retries;
+    private final Counter failures;
+
+    @Autowired
+    public NotificationDispatcher(FirebaseClient firebaseClient, MeterRegistry meterRegistry,
+                                  @Value("${notifications.dispatch.workers:4}") int workerCount,
+                                  @Value("${notifications.dispatch.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${notifications.dispatch.max-attempts:3}") int maxAttempts,
+                                  @Value("${notifications.dispatch.initial-backoff:500}") long initialBackoffMillis) {
+        this.firebaseClient = firebaseClient;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), this::runOnCaller);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor();
+
+        this.sendTimer = meterRegistry.timer("railwatch.notifications.send");
+        this.retries = meterRegistry.counter("railwatch.notifications.retries");
+        this.failures = meterRegistry.counter("railwatch.notifications.failures");
+        meterRegistry.gauge("railwatch.notifications.queue.depth", workers, executor -> executor.getQueue().size());
+    }
+
+    public CompletableFuture<NotificationResult> dispatch(NotificationRequest notificationRequest) {
+        return dispatch(notificationRequest.getTo(), () -> firebaseClient.send(notificationRequest), DISPATCH_FAILED);
+    }
+
+    public CompletableFuture<Map<NotificationTarget, NotificationResult>> dispatchMulticast(NotificationRequest template, Collection<NotificationTarget> notificationTargets) {
+        List<NotificationTarget> targets = new ArrayList<>(notificationTargets);
+        List<CompletableFuture<Map<NotificationTarget, NotificationResult>>> batches = new ArrayList<>();
+
+        for (int from = 0; from < targets.size(); from += FirebaseClient.MAX_BATCH_SIZE) {
+            List<NotificationTarget> batch = targets.subList(from, Math.min(from + FirebaseClient.MAX_BATCH_SIZE, targets.size()));
+            batches.add(dispatch(batch.size() + " targets", () -> firebaseClient.sendMulticast(template, batch), Collections.emptyMap()));
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    Map<NotificationTarget, NotificationResult> results = new LinkedHashMap<>();
+                    batches.forEach(batch -> results.putAll(batch.join()));
+                    return results;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        retryScheduler.shutdown();
+        workers.shutdown();
+        if (!workers.awaitTermination(10L, TimeUnit.SECONDS)) {
+            LOG.warn("{} notifications still queued at shutdown.", workers.getQueue().size());
+        }
+    }
+
+    private <T> CompletableFuture<T> dispatch(String recipient, Supplier<T> send, T failure) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(new Attempt<>(recipient, send, failure, result), 1);
+        return result;
+    }
+
+    private <T> void submit(Attempt<T> attempt, int attemptNumber) {
+        try {
+            workers.execute(() -> send(attempt, attemptNumber));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Dropping notification to {}; dispatcher is shut down.", attempt.recipient);
+            attempt.result.complete(attempt.failure);
+        }
+    }
+
+    private <T> void send(Attempt<T> attempt, int attemptNumber) {
+        long start = System.nanoTime();
+        try {
+            T outcome = attempt.send.get();
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            attempt.result.complete(outcome);
+        } catch (RestClientException e) {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (isTransient(e) && attemptNumber < maxAttempts) {
+                long backoff = backoffMillis(attemptNumber);
+                LOG.debug("Transient failure sending to {}, retrying in {}ms: {}", attempt.recipient, backoff, e.getMessage());
+                retries.increment();
+                scheduleRetry(attempt, attemptNumber + 1, backoff);
+            } else {
+                LOG.warn("Failed to send notification to {} after {} attempt(s).", attempt.recipient, attemptNumber, e);
+                failures.increment();
+                attempt.result.complete(attempt.failure);
+            }
+        } catch (RuntimeException e) {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            LOG.error("Unexpected failure sending notification to {}.", attempt.recipient, e);
+            failures.increment();
+            attempt.result.complete(attempt.failure);
+        }
+    }
+
+    private <T> void scheduleRetry(Attempt<T> attempt, int attemptNumber, long backoff) {
+        try {
+            retryScheduler.schedule(() -> submit(attempt, attemptNumber), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Dropping retry of notification to {}; dispatcher is shut down.", attempt.recipient);
+            attempt.result.complete(attempt.failure);
+        }
+    }
+
+    private void runOnCaller(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Notification dispatcher is shut down");
+        }
+
+        task.run();
+    }
+
+    long backoffMillis(int attempt) {
+        long ceiling = initialBackoffMillis << (attempt - 1);
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private boolean isTransient(RestClientException e) {
+        return e instanceof HttpServerErrorException
+                || e instanceof ResourceAccessException
+                || (e instanceof HttpClientErrorException && ((HttpClientErrorException) e).getStatusCode() == HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private static final class Attempt<T> {
+        private final String recipient;
+        private final Supplier<T> send;
+        private final T failure;
+        private final CompletableFuture<T> result;
+
+        private Attempt(String recipient, Supplier<T> send, T failure, CompletableFuture<T> result) {
+            this.recipient = recipient;
+            this.send = send;
+            this.failure = failure;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Service
+public class NotificationOutboxRelay {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationOutboxRelay.class);
+    private static final NotificationResult MISSING_RESULT = new NotificationResult(null, "MissingResult");
+
+    private final OutboxNotificationRepository outboxNotificationRepository;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final NotificationDispatcher notificationDispatcher;
+    private final UserService userService;
+    private final LastSentBoardCache lastSentBoardCache;
+    private final Clock clock;
+    private final int batchSize;
+    private final long claimTimeoutMillis;
+    private final int maxAttempts;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    @Autowired
+    public NotificationOutboxRelay(OutboxNotificationRepository outboxNotificationRepository, SentNotificationRepository sentNotificationRepository,
+                                   NotificationDispatcher notificationDispatcher, UserService userService, LastSentBoardCache lastSentBoardCache, Clock clock,
+                                   @Value("${notifications.outbox.batch-size:100}") int batchSize,
+                                   @Value("${notifications.outbox.claim-timeout:300000}") long claimTimeoutMillis,
+                                   @Value("${notifications.outbox.max-attempts:5}") int maxAttempts) {
+        this.outboxNotificationRepository = outboxNotificationRepository;
+        this.sentNotificationRepository = sentNotificationRepository;
+        this.notificationDispatcher = notificationDispatcher;
+        this.userService = userService;
+        this.lastSentBoardCache = lastSentBoardCache;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        this.claimTimeoutMillis = claimTimeoutMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.outbox.poll-interval:1000}")
+    public void relay() {
+        List<OutboxNotification> batch;
+        do {
+            LocalDateTime now = LocalDateTime.now(clock);
+            batch = outboxNotificationRepository.claimBatch(owner, batchSize, now, now.minus(claimTimeoutMillis, ChronoUnit.MILLIS));
+
+            if (!batch.isEmpty()) {
+                LOG.debug("Claimed {} outbox notifications.", batch.size());
+                dispatch(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private void dispatch(List<OutboxNotification> batch) {
+        Map<List<String>, List<Integer>> indexesByPayload = IntStream.range(0, batch.size()).boxed()
+                .collect(Collectors.groupingBy(i -> Arrays.asList(batch.get(i).getTitle(), batch.get(i).getBody()), LinkedHashMap::new, Collectors.toList()));
+
+        List<CompletableFuture<NotificationResult>> results = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        indexesByPayload.values().forEach(indexes -> {
+            List<Integer> multicastIndexes = indexes.stream()
+                    .filter(i -> !NotificationTarget.of(batch.get(i).getTo()).isTopic())
+                    .collect(Collectors.toList());
+
+            if (multicastIndexes.size() > 1) {
+                dispatchMulticast(batch, multicastIndexes, results);
+            }
+            indexes.stream()
+                    .filter(i -> results.get(i) == null)
+                    .forEach(i -> results.set(i, notificationDispatcher.dispatch(batch.get(i).toNotificationRequest())));
+        });
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenRun(() -> complete(batch, results))
+                .exceptionally(e -> {
+                    LOG.error("Failed to record outcome of {} outbox notifications.", batch.size(), e);
+                    return null;
+                });
+    }
+
+    private void dispatchMulticast(List<OutboxNotification> batch, List<Integer> indexes, List<CompletableFuture<NotificationResult>> results) {
+        List<NotificationTarget> notificationTargets = indexes.stream()
+                .map(i -> NotificationTarget.of(batch.get(i).getTo()))
+                .distinct()
+                .collect(Collectors.toList());
+
+        CompletableFuture<Map<NotificationTarget, NotificationResult>> multicast =
+                notificationDispatcher.dispatchMulticast(batch.get(indexes.get(0)).toNotificationRequest(), notificationTargets);
+
+        indexes.forEach(i -> results.set(i, multicast.thenApply(multicastResults ->
+                multicastResults.getOrDefault(NotificationTarget.of(batch.get(i).getTo()), MISSING_RESULT))));
+    }
+
+    private void complete(List<OutboxNotification> batch, List<CompletableFuture<NotificationResult>> results) {
+        List<OutboxNotification> sent = new ArrayList<>();
+        List<String> retryIds = new ArrayList<>();
+        List<OutboxNotification> failed = new ArrayList<>();
+        Set<NotificationTarget> unregisteredTargets = new HashSet<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            OutboxNotification outboxNotification = batch.get(i);
+            NotificationResult notificationResult = results.get(i).join();
+            if (notificationResult.isSuccess()) {
+                sent.add(outboxNotification);
+            } else if (notificationResult.isUnregistered()) {
+                LOG.info("Notification target {} is no longer registered ({}).", outboxNotification.getTo(), notificationResult.getError());
+                unregisteredTargets.add(NotificationTarget.of(outboxNotification.getTo()));
+                failed.add(outboxNotification);
+            } else if (outboxNotification.getAttempts() >= maxAttempts) {
+                LOG.warn("Giving up on notification to {} after {} attempts.", outboxNotification.getTo(), outboxNotification.getAttempts());
+                failed.add(outboxNotification);
+            } else {
+                retryIds.add(outboxNotification.getId());
+            }
+        }
+
+        LocalDateTime sentDateTime = LocalDateTime.now(clock);
+        if (!sent.isEmpty()) {
+            sentNotificationRepository.saveAll(sent.stream()
+                    .map(outboxNotification -> outboxNotification.toSentNotification(sentDateTime))
+                    .collect(Collectors.toList()));
+            outboxNotificationRepository.markSent(owner, sent.stream().map(OutboxNotification::getId).collect(Collectors.toList()), sentDateTime);
+            sent.stream()
+                    .filter(outboxNotification -> outboxNotification.getJourney() != null)
+                    .forEach(lastSentBoardCache::put);
+        }
+        outboxNotificationRepository.release(owner, retryIds);
+        outboxNotificationRepository.markFailed(owner, failed.stream().map(OutboxNotification::getId).collect(Collectors.toList()), sentDateTime);
+        failed.stream()
+                .filter(outboxNotification -> outboxNotification.getJourney() != null)
+                .forEach(lastSentBoardCache::failed);
+
+        if (!unregisteredTargets.isEmpty()) {
+            userService.disableUsersByNotificationTargets(unregisteredTargets);
+        }
+    }
+}
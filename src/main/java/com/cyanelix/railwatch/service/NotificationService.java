@@ -1,11 +1,14 @@
 package com.cyanelix.railwatch.service;
 
 import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.OutboxNotification;
 import com.cyanelix.railwatch.entity.Schedule;
 import com.cyanelix.railwatch.entity.SentNotification;
 import com.cyanelix.railwatch.firebase.client.FirebaseClient;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
 import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import com.cyanelix.railwatch.service.LastSentBoardCache.LastSentBoard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +17,7 @@ import org.springframework.stereotype.Service;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -21,52 +25,117 @@ import java.util.stream.Collectors;
 public class NotificationService {
     private static final Logger LOG = LoggerFactory.getLogger(FirebaseClient.class);
 
-    private final FirebaseClient firebaseClient;
+    private final OutboxNotificationRepository outboxNotificationRepository;
     private final SentNotificationRepository sentNotificationRepository;
+    private final LastSentBoardCache lastSentBoardCache;
+    private final TopicSubscriptionService topicSubscriptionService;
     private final Clock clock;
 
     @Autowired
-    public NotificationService(FirebaseClient firebaseClient, SentNotificationRepository sentNotificationRepository, Clock clock) {
-        this.firebaseClient = firebaseClient;
+    public NotificationService(OutboxNotificationRepository outboxNotificationRepository, SentNotificationRepository sentNotificationRepository, LastSentBoardCache lastSentBoardCache,
+                               TopicSubscriptionService topicSubscriptionService, Clock clock) {
+        this.outboxNotificationRepository = outboxNotificationRepository;
         this.sentNotificationRepository = sentNotificationRepository;
+        this.lastSentBoardCache = lastSentBoardCache;
+        this.topicSubscriptionService = topicSubscriptionService;
         this.clock = clock;
     }
 
     public void sendNotification(Schedule schedule, List<TrainTime> trainTimes) {
-        String notificationMessage = buildNotificationMessage(schedule, trainTimes);
-        NotificationRequest notificationRequest = new NotificationRequest(NotificationTarget.of(schedule.getNotificationTarget()), "RailWatch", notificationMessage);
+        NotificationTarget notificationTarget = resolveNotificationTarget(schedule);
+        Journey journey = Journey.of(schedule.getFromStation(), schedule.getToStation());
 
-        if (isDuplicateRequest(notificationRequest)) {
+        String boardMessage = buildNotificationMessage(journey, trainTimes);
+        String boardHash = SentNotification.contentHashOf(new NotificationRequest(notificationTarget, "RailWatch", boardMessage));
+        LastSentBoard lastSentBoard = lastSentBoardCache.get(notificationTarget, journey);
+        if (lastSentBoard != null && !lastSentBoard.isFromWindow(schedule.getStartTime())) {
+            lastSentBoard = null;
+        }
+
+        if (isDuplicateRequest(notificationTarget, journey, lastSentBoard, boardHash)) {
             LOG.debug("Not sending duplicate notification.");
             return;
         }
 
-        LOG.debug("Sending request for schedule {}", schedule);
+        String notificationMessage = boardMessage;
+        if (lastSentBoard != null && lastSentBoard.getTrainTimes() != null) {
+            List<BoardChange> boardChanges = BoardChange.between(lastSentBoard.getTrainTimes(), trainTimes);
 
-        boolean success = firebaseClient.sendNotification(notificationRequest);
+            if (boardChanges.isEmpty()) {
+                LOG.debug("No significant changes to board for schedule {}", schedule);
+                return;
+            }
 
-        if (success) {
-            sentNotificationRepository.save(SentNotification.of(notificationRequest, LocalDateTime.now(clock)));
+            notificationMessage = buildChangesMessage(journey, boardChanges);
         }
+
+        NotificationRequest notificationRequest = new NotificationRequest(notificationTarget, "RailWatch", notificationMessage);
+
+        LOG.debug("Queueing request for schedule {}", schedule);
+
+        outboxNotificationRepository.save(OutboxNotification.of(notificationRequest, journey, boardHash, trainTimes, schedule.getStartTime(), LocalDateTime.now(clock)));
+        lastSentBoardCache.markPending(notificationTarget, journey, boardHash);
     }
 
     public void sendNotification(NotificationTarget notificationTarget, String message) {
         NotificationRequest notificationRequest = new NotificationRequest(notificationTarget, "RailWatch", message);
 
-        LOG.debug("Sending message to {}: {}", notificationTarget.getTargetAddress(), message);
+        LOG.debug("Queueing message to {}: {}", notificationTarget.getTargetAddress(), message);
 
-        firebaseClient.sendNotification(notificationRequest);
+        outboxNotificationRepository.save(OutboxNotification.of(notificationRequest, LocalDateTime.now(clock)));
     }
 
-    private boolean isDuplicateRequest(NotificationRequest notificationRequest) {
-        return sentNotificationRepository.findBySentDateTimeAfter(LocalDate.now(clock).atStartOfDay()).parallelStream()
-                .map(NotificationRequest::of)
-                .anyMatch(sentRequest -> sentRequest.equals(notificationRequest));
+    public void sendNotifications(Collection<NotificationTarget> notificationTargets, String message) {
+        if (notificationTargets.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        List<OutboxNotification> outboxNotifications = notificationTargets.stream()
+                .map(notificationTarget -> OutboxNotification.of(new NotificationRequest(notificationTarget, "RailWatch", message), now))
+                .collect(Collectors.toList());
+
+        LOG.debug("Queueing message to {} targets: {}", outboxNotifications.size(), message);
+
+        outboxNotificationRepository.insert(outboxNotifications);
     }
 
-    private String buildNotificationMessage(Schedule schedule, List<TrainTime> trainTimes) {
+    private NotificationTarget resolveNotificationTarget(Schedule schedule) {
+        NotificationTarget userTarget = NotificationTarget.of(schedule.getNotificationTarget());
+        if (!topicSubscriptionService.isEnabled()) {
+            return userTarget;
+        }
+
+        NotificationTopic topic = schedule.getNotificationTopic();
+        return topicSubscriptionService.ensureSubscribed(topic, userTarget) ? topic.toNotificationTarget() : userTarget;
+    }
+
+    private boolean isDuplicateRequest(NotificationTarget notificationTarget, Journey journey, LastSentBoard lastSentBoard, String contentHash) {
+        if (lastSentBoardCache.isPending(notificationTarget, journey, contentHash)) {
+            return true;
+        }
+
+        if (lastSentBoard != null) {
+            return lastSentBoard.getFingerprint().equals(contentHash);
+        }
+
+        if (sentNotificationRepository.existsByToAndDayAndContentHash(notificationTarget.getTargetAddress(), LocalDate.now(clock), contentHash)) {
+            lastSentBoardCache.put(notificationTarget, journey, contentHash);
+            return true;
+        }
+
+        return false;
+    }
+
+    private String buildNotificationMessage(Journey journey, List<TrainTime> trainTimes) {
         return trainTimes.parallelStream()
-                .map(trainTime -> String.format("%s @ %s", Journey.of(schedule.getFromStation(), schedule.getToStation()).toString(), trainTime.toString()))
+                .map(trainTime -> String.format("%s @ %s", journey.toString(), trainTime.toString()))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private String buildChangesMessage(Journey journey, List<BoardChange> boardChanges) {
+        return boardChanges.stream()
+                .map(boardChange -> String.format("%s @ %s", journey.toString(), boardChange.toString()))
                 .collect(Collectors.joining("\n"));
     }
 }
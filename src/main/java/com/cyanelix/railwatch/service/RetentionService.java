@@ -0,0 +1,71 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.repository.DailyUserActivityRepository;
+import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+
+@Service
+public class RetentionService {
+    private static final Logger LOG = LoggerFactory.getLogger(RetentionService.class);
+
+    private final HeartbeatRepository heartbeatRepository;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final OutboxNotificationRepository outboxNotificationRepository;
+    private final DailyUserActivityRepository dailyUserActivityRepository;
+    private final Clock clock;
+    private final Duration heartbeatRetention;
+    private final Duration sentNotificationRetention;
+    private final Duration outboxRetention;
+    private final int rollUpDays;
+
+    @Autowired
+    public RetentionService(HeartbeatRepository heartbeatRepository, SentNotificationRepository sentNotificationRepository,
+                            OutboxNotificationRepository outboxNotificationRepository, DailyUserActivityRepository dailyUserActivityRepository, Clock clock,
+                            @Value("${retention.heartbeats.days:30}") int heartbeatRetentionDays,
+                            @Value("${retention.sent-notifications.days:30}") int sentNotificationRetentionDays,
+                            @Value("${retention.outbox.days:1}") int outboxRetentionDays,
+                            @Value("${retention.roll-up.days:3}") int rollUpDays) {
+        if (rollUpDays >= Math.min(heartbeatRetentionDays, sentNotificationRetentionDays)) {
+            throw new IllegalArgumentException("The roll-up window must be shorter than the retention period, or days expire before they are rolled up.");
+        }
+
+        this.heartbeatRepository = heartbeatRepository;
+        this.sentNotificationRepository = sentNotificationRepository;
+        this.outboxNotificationRepository = outboxNotificationRepository;
+        this.dailyUserActivityRepository = dailyUserActivityRepository;
+        this.clock = clock;
+        this.heartbeatRetention = Duration.ofDays(heartbeatRetentionDays);
+        this.sentNotificationRetention = Duration.ofDays(sentNotificationRetentionDays);
+        this.outboxRetention = Duration.ofDays(outboxRetentionDays);
+        this.rollUpDays = rollUpDays;
+    }
+
+    @PostConstruct
+    public void ensureRetentionIndexes() {
+        heartbeatRepository.ensureRetention(heartbeatRetention);
+        sentNotificationRepository.ensureRetention(sentNotificationRetention);
+        outboxNotificationRepository.ensureRetention(outboxRetention);
+    }
+
+    @Scheduled(cron = "${retention.roll-up.cron:0 30 2 * * *}", zone = "Europe/London")
+    public void rollUp() {
+        LocalDate today = LocalDate.now(clock);
+        for (int daysAgo = rollUpDays; daysAgo > 0; daysAgo--) {
+            LocalDate day = today.minusDays(daysAgo);
+            int rolledUp = dailyUserActivityRepository.rollUp(day);
+            LOG.debug("Rolled up activity of {} users for {}.", rolledUp, day);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.entity.Schedule;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class ScheduleChangeWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleChangeWatcher.class);
+
+    private final ScheduleRegistry scheduleRegistry;
+    private final MongoTemplate mongoTemplate;
+    private final long initialRetryMillis;
+    private final long maxRetryMillis;
+
+    private volatile boolean running;
+    private volatile boolean polling;
+
+    @Autowired
+    public ScheduleChangeWatcher(ScheduleRegistry scheduleRegistry, MongoTemplate mongoTemplate,
+                                 @Value("${schedules.change-stream.initial-retry-backoff:1000}") long initialRetryMillis,
+                                 @Value("${schedules.change-stream.max-retry-backoff:60000}") long maxRetryMillis) {
+        this.scheduleRegistry = scheduleRegistry;
+        this.mongoTemplate = mongoTemplate;
+        this.initialRetryMillis = initialRetryMillis;
+        this.maxRetryMillis = maxRetryMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+
+        Thread watcherThread = new Thread(this::watch, "schedule-change-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+    }
+
+    @Scheduled(fixedDelayString = "${schedules.registry.poll-interval:60000}")
+    public void poll() {
+        if (polling) {
+            scheduleRegistry.load();
+        }
+    }
+
+    void watch() {
+        long retryMillis = initialRetryMillis;
+
+        while (running) {
+            try (MongoCursor<ChangeStreamDocument<Document>> changes = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Schedule.class))
+                    .watch()
+                    .fullDocument(FullDocument.UPDATE_LOOKUP)
+                    .maxAwaitTime(1L, TimeUnit.SECONDS)
+                    .iterator()) {
+                // Load once the stream is open so no change can fall between the snapshot and the stream.
+                scheduleRegistry.load();
+                polling = false;
+                retryMillis = initialRetryMillis;
+                LOG.debug("Watching schedule change stream.");
+
+                while (running) {
+                    ChangeStreamDocument<Document> change = changes.tryNext();
+                    if (change != null) {
+                        apply(change);
+                    }
+                }
+            } catch (MongoCommandException e) {
+                LOG.info("Change streams unavailable ({}), polling for schedule changes and retrying in {}ms.", e.getErrorMessage(), retryMillis);
+                polling = true;
+            } catch (RuntimeException e) {
+                LOG.warn("Schedule change stream failed, polling for schedule changes and retrying in {}ms.", retryMillis, e);
+                polling = true;
+            }
+
+            if (running) {
+                sleep(retryMillis);
+                retryMillis = Math.min(retryMillis * 2, maxRetryMillis);
+            }
+        }
+    }
+
+    boolean isPolling() {
+        return polling;
+    }
+
+    void apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT:
+            case UPDATE:
+            case REPLACE:
+                if (change.getFullDocument() != null) {
+                    scheduleRegistry.put(mongoTemplate.getConverter().read(Schedule.class, change.getFullDocument()));
+                }
+                break;
+            case DELETE:
+                scheduleRegistry.remove(toScheduleId(change.getDocumentKey().get("_id")));
+                break;
+            default:
+                LOG.debug("Reloading schedules after {} event.", change.getOperationType());
+                scheduleRegistry.load();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private String toScheduleId(BsonValue id) {
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+
+        return id.asString().getValue();
+    }
+}
@@ -0,0 +1,113 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.ScheduleState;
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.repository.ScheduleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component
+public class ScheduleRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleRegistry.class);
+
+    private final ScheduleRepository scheduleRepository;
+
+    private final Map<String, Schedule> enabledSchedules = new ConcurrentHashMap<>();
+
+    private final Map<UserId, Set<String>> scheduleIdsByUser = new ConcurrentHashMap<>();
+
+    private volatile long version;
+
+    @Autowired
+    public ScheduleRegistry(ScheduleRepository scheduleRepository) {
+        this.scheduleRepository = scheduleRepository;
+    }
+
+    @PostConstruct
+    public void initialise() {
+        int migratedSchedules = scheduleRepository.embedUserSnapshots();
+        if (migratedSchedules > 0) {
+            LOG.info("Embedded user snapshots into {} schedules.", migratedSchedules);
+        }
+
+        int backfilledSchedules = scheduleRepository.backfillActivationFields();
+        if (backfilledSchedules > 0) {
+            LOG.info("Backfilled activation fields of {} schedules.", backfilledSchedules);
+        }
+
+        load();
+    }
+
+    public synchronized void load() {
+        List<Schedule> loadedSchedules = scheduleRepository.findByStateIs(ScheduleState.ENABLED);
+        Set<String> loadedIds = loadedSchedules.stream()
+                .map(Schedule::getId)
+                .collect(Collectors.toSet());
+
+        new ArrayList<>(enabledSchedules.keySet()).stream()
+                .filter(scheduleId -> !loadedIds.contains(scheduleId))
+                .forEach(this::remove);
+        loadedSchedules.forEach(this::put);
+
+        LOG.debug("Loaded {} enabled schedules.", enabledSchedules.size());
+    }
+
+    public synchronized void put(Schedule schedule) {
+        remove(schedule.getId());
+
+        if (isPollable(schedule)) {
+            enabledSchedules.put(schedule.getId(), schedule);
+            scheduleIdsByUser.computeIfAbsent(schedule.getUser().getUserId(), userId -> ConcurrentHashMap.newKeySet())
+                    .add(schedule.getId());
+            version++;
+        }
+    }
+
+    public synchronized void remove(String scheduleId) {
+        Schedule removedSchedule = enabledSchedules.remove(scheduleId);
+
+        if (removedSchedule != null) {
+            version++;
+            scheduleIdsByUser.computeIfPresent(removedSchedule.getUser().getUserId(), (userId, scheduleIds) -> {
+                scheduleIds.remove(scheduleId);
+                return scheduleIds.isEmpty() ? null : scheduleIds;
+            });
+        }
+    }
+
+    public synchronized void removeUser(UserId userId) {
+        Set<String> scheduleIds = scheduleIdsByUser.remove(userId);
+
+        if (scheduleIds != null) {
+            enabledSchedules.keySet().removeAll(scheduleIds);
+            version++;
+        }
+    }
+
+    public Stream<Schedule> getEnabledSchedules() {
+        return enabledSchedules.values().stream();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    private boolean isPollable(Schedule schedule) {
+        return schedule.getState() == ScheduleState.ENABLED
+                && schedule.getUser() != null
+                && schedule.getUser().getUserState() == UserState.ENABLED;
+    }
+}
@@ -4,17 +4,35 @@ import com.cyanelix.railwatch.domain.*;
 import com.cyanelix.railwatch.entity.Schedule;
 import com.cyanelix.railwatch.entity.User;
 import com.cyanelix.railwatch.repository.ScheduleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 @Service
@@ -27,17 +45,68 @@ public class ScheduleService {
 
     private final ScheduleRepository scheduleRepository;
 
+    private final ScheduleRegistry scheduleRegistry;
+
     private final UserService userService;
 
     private final Clock clock;
 
+    private final Duration pollPeriod;
+
+    private final Duration slotPeriod;
+
+    private final boolean activeQueryEnabled;
+
+    private final Executor lookupExecutor;
+
+    private final int lookupWorkers;
+
+    private MinuteOfWeek activeMinute;
+
+    private long indexedVersion = -1L;
+
+    private Map<Journey, List<Schedule>> schedulesByJourney = Collections.emptyMap();
+
+    private Map<Journey, Long> phaseOffsets = Collections.emptyMap();
+
+    private List<List<Journey>> phaseBuckets = Collections.emptyList();
+
+    private final Map<Journey, Instant> lastPolled = new ConcurrentHashMap<>();
+
+    private final Set<Journey> postponedJourneys = ConcurrentHashMap.newKeySet();
+
+    private Instant previousTick;
+
+    private final Timer tickTimer;
+
+    private final Counter tickOverruns;
+
+    private final Counter postponements;
+
+    private final Timer journeyLag;
+
     @Autowired
-    public ScheduleService(TrainTimesService trainTimesService, NotificationService notificationService, ScheduleRepository scheduleRepository, UserService userService, Clock clock) {
+    public ScheduleService(TrainTimesService trainTimesService, NotificationService notificationService, ScheduleRepository scheduleRepository, ScheduleRegistry scheduleRegistry, UserService userService, Clock clock,
+                           MeterRegistry meterRegistry, @Value("${schedules.poll-period:30000}") long pollPeriodMillis, @Value("${schedules.poll-slot:1000}") long slotPeriodMillis,
+                           @Value("${schedules.active-query.enabled:false}") boolean activeQueryEnabled,
+                           @Qualifier("lookupExecutor") Executor lookupExecutor, @Value("${schedules.lookup-workers:8}") int lookupWorkers) {
         this.trainTimesService = trainTimesService;
         this.notificationService = notificationService;
         this.scheduleRepository = scheduleRepository;
+        this.scheduleRegistry = scheduleRegistry;
         this.userService = userService;
         this.clock = clock;
+        this.pollPeriod = Duration.ofMillis(pollPeriodMillis);
+        this.slotPeriod = Duration.ofMillis(slotPeriodMillis);
+        this.activeQueryEnabled = activeQueryEnabled;
+        this.lookupExecutor = lookupExecutor;
+        this.lookupWorkers = lookupWorkers;
+
+        this.tickTimer = meterRegistry.timer("railwatch.schedules.tick");
+        this.tickOverruns = meterRegistry.counter("railwatch.schedules.tick.overruns");
+        this.postponements = meterRegistry.counter("railwatch.schedules.journeys.postponed");
+        this.journeyLag = meterRegistry.timer("railwatch.schedules.journey.lag");
+        meterRegistry.gauge("railwatch.schedules.journey.lag.max", lastPolled, polled -> getMaxLag().getSeconds());
     }
 
     public void createSchedule(Schedule schedule, UserId userId) {
@@ -45,13 +114,47 @@ public class ScheduleService {
         schedule.setUser(user);
 
         scheduleRepository.save(schedule);
+        scheduleRegistry.put(schedule);
     }
 
-    @Scheduled(fixedDelay = 30000)
-    public void checkTimes() {
+    @Scheduled(fixedRateString = "${schedules.poll-slot:1000}")
+    public synchronized void checkTimes() {
         LOG.debug("Checking times.");
-        getActiveSchedules()
-                .forEach(this::lookupAndNotifyTrainTimes);
+        Instant tickStart = clock.instant();
+        Instant deadline = tickStart.plus(slotPeriod);
+        Instant windowStart = previousTick == null ? tickStart.minus(slotPeriod) : previousTick;
+        previousTick = tickStart;
+
+        MinuteOfWeek now = MinuteOfWeek.of(LocalDateTime.now(clock));
+        refreshPhaseBuckets(now);
+
+        Map<Journey, List<Schedule>> dueSchedules = new HashMap<>();
+        Stream.concat(postponedJourneys.stream(), getJourneysInWindow(windowStart, tickStart))
+                .distinct()
+                .forEach(journey -> {
+                    List<Schedule> activeSchedules = schedulesByJourney.getOrDefault(journey, Collections.emptyList()).stream()
+                            .filter(schedule -> schedule.isActive(now))
+                            .collect(Collectors.toList());
+                    if (activeSchedules.isEmpty()) {
+                        lastPolled.remove(journey);
+                    } else {
+                        dueSchedules.put(journey, activeSchedules);
+                    }
+                });
+        postponedJourneys.clear();
+
+        List<Journey> journeysByPriority = dueSchedules.keySet().stream()
+                .sorted(Comparator.comparing(journey -> lastPolled.getOrDefault(journey, Instant.MIN)))
+                .collect(Collectors.toList());
+
+        Queue<Journey> remainingJourneys = new ConcurrentLinkedQueue<>(journeysByPriority);
+        CompletableFuture<?>[] workers = IntStream.range(0, Math.min(lookupWorkers, journeysByPriority.size()))
+                .mapToObj(worker -> CompletableFuture.runAsync(() -> lookupUntilDeadline(remainingJourneys, dueSchedules, deadline), lookupExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(workers).join();
+        postponedJourneys.addAll(remainingJourneys);
+
+        recordTick(tickStart, journeysByPriority.size(), postponedJourneys.size());
     }
 
     public Set<Schedule> getSchedules() {
@@ -60,16 +163,115 @@ public class ScheduleService {
     }
 
     public List<Schedule> getSchedulesForUser(User user) {
-        return scheduleRepository.findByUser(user);
+        return scheduleRepository.findByUserUserId(user.getUserId());
+    }
+
+    private void refreshPhaseBuckets(MinuteOfWeek now) {
+        if (activeQueryEnabled) {
+            if (!now.equals(activeMinute)) {
+                indexSchedules(scheduleRepository.findActiveAt(now));
+                activeMinute = now;
+            }
+            return;
+        }
+
+        long version = scheduleRegistry.getVersion();
+        if (version != indexedVersion) {
+            indexSchedules(scheduleRegistry.getEnabledSchedules().collect(Collectors.toList()));
+            indexedVersion = version;
+        }
     }
 
-    private void lookupAndNotifyTrainTimes(Schedule schedule) {
-        List<TrainTime> trainTimes = trainTimesService.lookupTrainTimes(schedule.getFromStation(), schedule.getToStation());
-        notificationService.sendNotification(schedule, trainTimes);
+    private void indexSchedules(List<Schedule> schedules) {
+        long periodMillis = pollPeriod.toMillis();
+        long slotMillis = slotPeriod.toMillis();
+
+        schedulesByJourney = schedules.stream()
+                .collect(Collectors.groupingBy(schedule -> Journey.of(schedule.getFromStation(), schedule.getToStation())));
+        phaseOffsets = new HashMap<>();
+        phaseBuckets = new ArrayList<>();
+        for (long slotStart = 0; slotStart < periodMillis; slotStart += slotMillis) {
+            phaseBuckets.add(new ArrayList<>());
+        }
+
+        schedulesByJourney.keySet().forEach(journey -> {
+            long phaseOffset = Math.floorMod((long) journey.toString().hashCode(), periodMillis);
+            phaseOffsets.put(journey, phaseOffset);
+            phaseBuckets.get((int) (phaseOffset / slotMillis)).add(journey);
+        });
+        lastPolled.keySet().retainAll(schedulesByJourney.keySet());
+    }
+
+    private Stream<Journey> getJourneysInWindow(Instant windowStart, Instant windowEnd) {
+        long periodMillis = pollPeriod.toMillis();
+        long slotMillis = slotPeriod.toMillis();
+        long windowMillis = Duration.between(windowStart, windowEnd).toMillis();
+        if (windowMillis >= periodMillis) {
+            return phaseOffsets.keySet().stream();
+        }
+
+        long startPhase = Math.floorMod(windowStart.toEpochMilli(), periodMillis);
+        List<Journey> journeys = new ArrayList<>();
+        for (long covered = 0; covered < windowMillis; ) {
+            long phase = (startPhase + covered) % periodMillis;
+            int slot = (int) (phase / slotMillis);
+            phaseBuckets.get(slot).stream()
+                    .filter(journey -> Math.floorMod(phaseOffsets.get(journey) - startPhase, periodMillis) < windowMillis)
+                    .forEach(journeys::add);
+            covered += Math.min((slot + 1) * slotMillis, periodMillis) - phase;
+        }
+        return journeys.stream();
+    }
+
+    private void lookupUntilDeadline(Queue<Journey> remainingJourneys, Map<Journey, List<Schedule>> dueSchedules, Instant deadline) {
+        while (clock.instant().isBefore(deadline)) {
+            Journey journey = remainingJourneys.poll();
+            if (journey == null) {
+                return;
+            }
+
+            lookupAndNotifyTrainTimes(journey, dueSchedules.get(journey));
+        }
+    }
+
+    private void lookupAndNotifyTrainTimes(Journey journey, List<Schedule> schedules) {
+        List<TrainTime> trainTimes;
+        try {
+            trainTimes = trainTimesService.lookupTrainTimes(journey.getFrom(), journey.getTo());
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to look up train times for {}", journey, e);
+            return;
+        }
+
+        Instant now = clock.instant();
+        Instant previousPoll = lastPolled.put(journey, now);
+        if (previousPoll != null) {
+            journeyLag.record(Duration.between(previousPoll, now));
+        }
+
+        schedules.forEach(schedule -> notificationService.sendNotification(schedule, trainTimes));
+    }
+
+    private void recordTick(Instant tickStart, int dueJourneys, int postponed) {
+        Duration tickDuration = Duration.between(tickStart, clock.instant());
+        tickTimer.record(tickDuration);
+
+        if (postponed > 0) {
+            postponements.increment(postponed);
+        }
+
+        if (tickDuration.compareTo(slotPeriod) > 0 || postponed > 0) {
+            tickOverruns.increment();
+            LOG.warn("Tick took {}ms against a period of {}ms; postponed {} of {} journeys.",
+                    tickDuration.toMillis(), slotPeriod.toMillis(), postponed, dueJourneys);
+        }
     }
 
-    private Stream<Schedule> getActiveSchedules() {
-        return scheduleRepository.findByStateIs(ScheduleState.ENABLED).parallelStream()
-                .filter(schedule -> schedule.isActive(LocalDateTime.now(clock)));
+    private Duration getMaxLag() {
+        Instant now = clock.instant();
+        return lastPolled.values().stream()
+                .map(polled -> Duration.between(polled, now))
+                .max(Comparator.naturalOrder())
+                .orElse(Duration.ZERO);
     }
 }
@@ -0,0 +1,171 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.NotificationTopic;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.TopicSubscription;
+import com.cyanelix.railwatch.firebase.client.FirebaseClient;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionResult;
+import com.cyanelix.railwatch.repository.TopicSubscriptionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Service
+public class TopicSubscriptionService {
+    private static final Logger LOG = LoggerFactory.getLogger(TopicSubscriptionService.class);
+
+    private final FirebaseClient firebaseClient;
+    private final TopicSubscriptionRepository topicSubscriptionRepository;
+    private final ScheduleRegistry scheduleRegistry;
+    private final UserService userService;
+    private final boolean enabled;
+
+    private final Map<NotificationTopic, Set<NotificationTarget>> subscriptions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TopicSubscriptionService(FirebaseClient firebaseClient, TopicSubscriptionRepository topicSubscriptionRepository, ScheduleRegistry scheduleRegistry,
+                                    UserService userService, @Value("${notifications.fan-out.enabled:false}") boolean enabled) {
+        this.firebaseClient = firebaseClient;
+        this.topicSubscriptionRepository = topicSubscriptionRepository;
+        this.scheduleRegistry = scheduleRegistry;
+        this.userService = userService;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+
+        replaceSubscriptions(loadSubscriptions());
+        LOG.debug("Loaded subscriptions to {} topics.", subscriptions.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean ensureSubscribed(NotificationTopic topic, NotificationTarget notificationTarget) {
+        Set<NotificationTarget> members = subscriptions.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet());
+        if (members.contains(notificationTarget)) {
+            return true;
+        }
+
+        synchronized (members) {
+            if (members.contains(notificationTarget)) {
+                return true;
+            }
+
+            try {
+                TopicSubscriptionResult result = firebaseClient.subscribe(topic, Collections.singleton(notificationTarget)).get(notificationTarget);
+                if (result.isSuccess()) {
+                    if (record(topic, notificationTarget)) {
+                        members.add(notificationTarget);
+                    }
+                    return true;
+                }
+
+                LOG.info("Topic {} rejected {} ({}), sending directly.", topic, notificationTarget.getTargetAddress(), result.getError());
+                if (result.isInvalidTarget()) {
+                    userService.disableUsersByNotificationTargets(Collections.singleton(notificationTarget));
+                }
+            } catch (RestClientException e) {
+                LOG.warn("Failed to subscribe {} to topic {}", notificationTarget.getTargetAddress(), topic, e);
+            }
+
+            return false;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.fan-out.reconcile-interval:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+
+        Map<NotificationTopic, Set<NotificationTarget>> wanted = scheduleRegistry.getEnabledSchedules()
+                .collect(Collectors.groupingBy(Schedule::getNotificationTopic,
+                        Collectors.mapping(schedule -> NotificationTarget.of(schedule.getNotificationTarget()), Collectors.toSet())));
+
+        Map<NotificationTopic, Set<NotificationTarget>> persisted = loadSubscriptions();
+        persisted.forEach((topic, members) -> {
+            Set<NotificationTarget> stale = new HashSet<>(members);
+            stale.removeAll(wanted.getOrDefault(topic, Collections.emptySet()));
+            if (stale.isEmpty()) {
+                return;
+            }
+
+            try {
+                Map<NotificationTarget, TopicSubscriptionResult> results = firebaseClient.unsubscribe(topic, stale);
+                Set<NotificationTarget> invalid = stale.stream()
+                        .filter(notificationTarget -> results.get(notificationTarget).isInvalidTarget())
+                        .collect(Collectors.toSet());
+                Set<NotificationTarget> removed = stale.stream()
+                        .filter(notificationTarget -> results.get(notificationTarget).isSuccess() || invalid.contains(notificationTarget))
+                        .collect(Collectors.toSet());
+
+                if (!removed.isEmpty()) {
+                    topicSubscriptionRepository.deleteByTopicAndNotificationTargetIn(topic.getName(), removed.stream()
+                            .map(NotificationTarget::getTargetAddress)
+                            .collect(Collectors.toList()));
+                    members.removeAll(removed);
+                    LOG.debug("Unsubscribed {} of {} targets from topic {}", removed.size(), stale.size(), topic);
+                }
+                if (!invalid.isEmpty()) {
+                    userService.disableUsersByNotificationTargets(invalid);
+                }
+            } catch (RestClientException e) {
+                LOG.warn("Failed to unsubscribe {} targets from topic {}", stale.size(), topic, e);
+            }
+        });
+
+        replaceSubscriptions(persisted);
+    }
+
+    private boolean record(NotificationTopic topic, NotificationTarget notificationTarget) {
+        try {
+            topicSubscriptionRepository.insert(TopicSubscription.of(topic, notificationTarget));
+        } catch (DuplicateKeyException e) {
+            LOG.debug("Subscription of {} to topic {} already recorded.", notificationTarget.getTargetAddress(), topic);
+        } catch (DataAccessException e) {
+            LOG.warn("Failed to record subscription of {} to topic {}", notificationTarget.getTargetAddress(), topic, e);
+            return false;
+        }
+
+        return true;
+    }
+
+    private Map<NotificationTopic, Set<NotificationTarget>> loadSubscriptions() {
+        return topicSubscriptionRepository.findAll().stream()
+                .collect(Collectors.groupingBy(TopicSubscription::getTopic,
+                        Collectors.mapping(TopicSubscription::getNotificationTarget, Collectors.toSet())));
+    }
+
+    private void replaceSubscriptions(Map<NotificationTopic, Set<NotificationTarget>> persisted) {
+        subscriptions.keySet().retainAll(persisted.keySet());
+        persisted.forEach((topic, members) -> {
+            Set<NotificationTarget> cached = subscriptions.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet());
+            synchronized (cached) {
+                cached.clear();
+                cached.addAll(members);
+            }
+        });
+        subscriptions.values().removeIf(Set::isEmpty);
+    }
+}
@@ -3,24 +3,54 @@ package com.cyanelix.railwatch.service;
 import com.cyanelix.railwatch.darwin.client.DarwinActionType;
 import com.cyanelix.railwatch.darwin.client.DarwinClient;
 import com.cyanelix.railwatch.darwin.client.DeparturesBoardRequest;
+import com.cyanelix.railwatch.domain.Journey;
 import com.cyanelix.railwatch.domain.Station;
 import com.cyanelix.railwatch.domain.TrainTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 @Service
 public class TrainTimesService {
     private final DarwinClient darwinClient;
+    private final Executor readExecutor;
+
+    private final Map<Journey, CompletableFuture<List<TrainTime>>> inFlightLookups = new ConcurrentHashMap<>();
 
     @Autowired
-    public TrainTimesService(DarwinClient darwinClient) {
+    public TrainTimesService(DarwinClient darwinClient, @Qualifier("readExecutor") Executor readExecutor) {
         this.darwinClient = darwinClient;
+        this.readExecutor = readExecutor;
     }
 
     public List<TrainTime> lookupTrainTimes(Station fromStation, Station toStation) {
         DeparturesBoardRequest departuresBoardRequest = new DeparturesBoardRequest(fromStation, toStation);
         return darwinClient.sendAndReceive(departuresBoardRequest, DarwinActionType.GET_DEPARTURE_BOARD);
     }
+
+    public CompletableFuture<List<TrainTime>> lookupTrainTimesAsync(Station fromStation, Station toStation) {
+        Journey journey = Journey.of(fromStation, toStation);
+        CompletableFuture<List<TrainTime>> lookup = new CompletableFuture<>();
+        CompletableFuture<List<TrainTime>> inFlightLookup = inFlightLookups.putIfAbsent(journey, lookup);
+        if (inFlightLookup != null) {
+            return inFlightLookup;
+        }
+
+        lookup.whenComplete((trainTimes, e) -> inFlightLookups.remove(journey, lookup));
+        readExecutor.execute(() -> {
+            try {
+                lookup.complete(lookupTrainTimes(fromStation, toStation));
+            } catch (RuntimeException e) {
+                lookup.completeExceptionally(e);
+            }
+        });
+
+        return lookup;
+    }
 }
@@ -4,20 +4,29 @@ import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
 import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.repository.ScheduleRepository;
 import com.cyanelix.railwatch.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
 public class UserService {
     private final UserRepository userRepository;
+    private final ScheduleRepository scheduleRepository;
+    private final ScheduleRegistry scheduleRegistry;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, ScheduleRepository scheduleRepository, ScheduleRegistry scheduleRegistry) {
         this.userRepository = userRepository;
+        this.scheduleRepository = scheduleRepository;
+        this.scheduleRegistry = scheduleRegistry;
     }
 
     public User createUser(NotificationTarget notificationTarget) {
@@ -35,8 +44,26 @@ public class UserService {
 
     public void disableUserByNotificationTarget(NotificationTarget notificationTarget) {
         User user = userRepository.findByNotificationTarget(notificationTarget.getTargetAddress());
+        if (user == null) {
+            return;
+        }
+
         user.setUserState(UserState.DISABLED);
         userRepository.save(user);
+        scheduleRepository.updateUserState(Collections.singletonList(user.getUserId()), UserState.DISABLED);
+
+        scheduleRegistry.removeUser(user.getUserId());
+    }
+
+    public void disableUsersByNotificationTargets(Collection<NotificationTarget> notificationTargets) {
+        List<String> targetAddresses = notificationTargets.stream()
+                .map(NotificationTarget::getTargetAddress)
+                .collect(Collectors.toList());
+
+        List<UserId> disabledUserIds = userRepository.disableByNotificationTargets(targetAddresses);
+        scheduleRepository.updateUserState(disabledUserIds, UserState.DISABLED);
+
+        disabledUserIds.forEach(scheduleRegistry::removeUser);
     }
 
     public Stream<User> getEnabledUsers() {
@@ -0,0 +1,56 @@
+package com.cyanelix.railwatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ApplicationConfigurationTest {
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Before
+    public void setup() {
+        taskScheduler = new ApplicationConfiguration().taskScheduler(2);
+        taskScheduler.initialize();
+    }
+
+    @After
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void taskScheduler_poolSizeAndThreadNamesConfigured() {
+        // Then...
+        assertThat(taskScheduler.getScheduledThreadPoolExecutor().getCorePoolSize(), is(2));
+        assertThat(taskScheduler.getThreadNamePrefix(), is("scheduled-"));
+    }
+
+    @Test
+    public void longRunningJob_taskScheduler_otherJobsStillRun() throws InterruptedException {
+        // Given...
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherJobRan = new CountDownLatch(1);
+        taskScheduler.execute(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // When...
+        taskScheduler.execute(otherJobRan::countDown);
+
+        // Then...
+        assertTrue(otherJobRan.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+}
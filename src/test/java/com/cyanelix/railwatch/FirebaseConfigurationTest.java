@@ -0,0 +1,81 @@
+package com.cyanelix.railwatch;
+
+import com.cyanelix.railwatch.firebase.stub.FirebaseStub;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FirebaseConfigurationTest {
+    private MeterRegistry meterRegistry;
+
+    private FirebaseConfiguration firebaseConfiguration;
+
+    private FirebaseStub firebaseStub;
+
+    @Before
+    public void setup() throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+
+        firebaseConfiguration = new FirebaseConfiguration();
+        ReflectionTestUtils.setField(firebaseConfiguration, "maxConnections", 5);
+        ReflectionTestUtils.setField(firebaseConfiguration, "connectTimeoutMillis", 1000);
+        ReflectionTestUtils.setField(firebaseConfiguration, "readTimeoutMillis", 1000);
+        ReflectionTestUtils.setField(firebaseConfiguration, "poolAcquireTimeoutMillis", 1000);
+        ReflectionTestUtils.setField(firebaseConfiguration, "idleTimeoutMillis", 30000L);
+
+        firebaseStub = new FirebaseStub().start();
+    }
+
+    @After
+    public void tearDown() {
+        firebaseStub.stop();
+    }
+
+    @Test
+    public void connectionManager_poolMetricsRegistered() {
+        // When...
+        firebaseConfiguration.firebaseConnectionManager(meterRegistry);
+
+        // Then...
+        assertThat(meterRegistry.get("railwatch.firebase.pool.max").gauge().value(), is(5.0));
+        assertThat(meterRegistry.get("railwatch.firebase.pool.leased").gauge().value(), is(0.0));
+    }
+
+    @Test
+    public void sequentialRequests_requestFactory_connectionKeptAliveAndReused() throws IOException {
+        // Given...
+        PoolingHttpClientConnectionManager connectionManager = firebaseConfiguration.firebaseConnectionManager(meterRegistry);
+        ClientHttpRequestFactory requestFactory = firebaseConfiguration.firebaseRequestFactory(connectionManager);
+        URI uri = URI.create(firebaseStub.getSendUrl());
+
+        // When...
+        for (int i = 0; i < 3; i++) {
+            ClientHttpRequest request = requestFactory.createRequest(uri, HttpMethod.POST);
+            request.getBody().write("{\"to\":\"token\"}".getBytes(StandardCharsets.UTF_8));
+            try (ClientHttpResponse response = request.execute()) {
+                StreamUtils.drain(response.getBody());
+            }
+        }
+
+        // Then...
+        assertThat(connectionManager.getTotalStats().getAvailable(), is(1));
+        assertThat(connectionManager.getTotalStats().getLeased(), is(0));
+        assertThat(firebaseStub.getDeliveredPushes(), is(3));
+    }
+}
@@ -10,14 +10,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(DeparturesController.class)
@@ -36,9 +40,13 @@ public class DeparturesControllerTest {
                         .withExpectedDepartureTime(LocalTime.of(10, 0))
                         .build());
 
-        given(mockTrainTimesService.lookupTrainTimes(Station.of("AAA"), Station.of("BBB"))).willReturn(singleTime);
+        given(mockTrainTimesService.lookupTrainTimesAsync(Station.of("AAA"), Station.of("BBB"))).willReturn(CompletableFuture.completedFuture(singleTime));
 
-        mockMvc.perform(get("/departures?from=AAA&to=BBB"))
+        MvcResult mvcResult = mockMvc.perform(get("/departures?from=AAA&to=BBB"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk())
             .andExpect(content().json("[{'scheduledDepartureTime':'10:00', 'expectedDepartureTime':'10:00', 'message':''}]"));
     }
@@ -46,9 +54,13 @@ public class DeparturesControllerTest {
     @Test
     public void noServicesReturned_successWithEmptyArray() throws Exception {
         List<TrainTime> noTimes = Collections.emptyList();
-        given(mockTrainTimesService.lookupTrainTimes(Station.of("AAA"), Station.of("BBB"))).willReturn(noTimes);
+        given(mockTrainTimesService.lookupTrainTimesAsync(Station.of("AAA"), Station.of("BBB"))).willReturn(CompletableFuture.completedFuture(noTimes));
+
+        MvcResult mvcResult = mockMvc.perform(get("/departures?from=AAA&to=BBB"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
 
-        mockMvc.perform(get("/departures?from=AAA&to=BBB"))
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().json("[]"));
     }
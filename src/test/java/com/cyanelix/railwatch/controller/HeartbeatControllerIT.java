@@ -1,7 +1,12 @@
 package com.cyanelix.railwatch.controller;
 
+import com.cyanelix.railwatch.domain.UserId;
+import com.cyanelix.railwatch.domain.UserState;
 import com.cyanelix.railwatch.entity.Heartbeat;
+import com.cyanelix.railwatch.entity.User;
 import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.repository.UserRepository;
+import com.cyanelix.railwatch.service.HeartbeatBuffer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,6 +19,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.util.List;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -28,15 +34,26 @@ public class HeartbeatControllerIT {
     @Autowired
     private HeartbeatRepository heartbeatRepository;
 
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private HeartbeatBuffer heartbeatBuffer;
+
     @Before
     public void setup() {
         heartbeatRepository.deleteAll();
+        userRepository.deleteAll();
+        userRepository.save(new User(UserId.generate(), "device-id", UserState.ENABLED));
     }
 
     @Test
     public void createHeartbeat_queryDatabase_heartbeatIsStored() throws Exception {
         mockMvc.perform(put("/heartbeat/device-id"))
                 .andExpect(status().isCreated());
+        heartbeatBuffer.flush();
+
+        assertThat(userRepository.findByNotificationTarget("device-id").getLastHeartbeat(), is(notNullValue()));
 
         List<Heartbeat> heartbeatEntities = heartbeatRepository.findAll();
         assertThat(heartbeatEntities.size(), is(1));
@@ -13,9 +13,11 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -48,7 +50,7 @@ public class SchedulesControllerIT {
                         .content(buildRequest(userId, null)))
                 .andExpect(status().isCreated());
 
-        mockMvc.perform(get("/schedules"))
+        getSchedules()
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(expectedResponse(userId, ScheduleState.ENABLED)));
@@ -64,7 +66,7 @@ public class SchedulesControllerIT {
                         .content(buildRequest(userId, ScheduleState.ENABLED)))
                 .andExpect(status().isCreated());
 
-        mockMvc.perform(get("/schedules"))
+        getSchedules()
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(expectedResponse(userId, ScheduleState.ENABLED)));
@@ -80,12 +82,20 @@ public class SchedulesControllerIT {
                         .content(buildRequest(userId, ScheduleState.DISABLED)))
                 .andExpect(status().isCreated());
 
-        mockMvc.perform(get("/schedules"))
+        getSchedules()
                 .andExpect(status().isOk())
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(expectedResponse(userId, ScheduleState.DISABLED)));
     }
 
+    private ResultActions getSchedules() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/schedules"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(mvcResult));
+    }
+
     private String createUser() throws Exception {
         MvcResult userResponse = mockMvc.perform(
                 post("/users")
@@ -1,5 +1,6 @@
 package com.cyanelix.railwatch.controller;
 
+import com.cyanelix.railwatch.ApplicationConfiguration;
 import com.cyanelix.railwatch.converter.ScheduleDTOToScheduleConverter;
 import com.cyanelix.railwatch.converter.ScheduleToDTOConverter;
 import com.cyanelix.railwatch.domain.*;
@@ -13,10 +14,12 @@ import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.convert.support.GenericConversionService;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalTime;
 import java.util.Collections;
@@ -26,12 +29,15 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(SchedulesController.class)
+@Import(ApplicationConfiguration.class)
 @RunWith(SpringRunner.class)
 public class SchedulesControllerTest {
     private static final UserId USER_ID = UserId.of("123e4567-e89b-12d3-a456-426655440000");
@@ -95,7 +101,11 @@ public class SchedulesControllerTest {
                         ScheduleState.ENABLED,
                         new User(userId, "foo", UserState.ENABLED))));
 
-        mockMvc.perform(get("/schedules"))
+        MvcResult mvcResult = mockMvc.perform(get("/schedules"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().json("[{\"startTime\":\"07:00\", \"endTime\":\"08:00\", \"fromStation\":\"FOO\", \"toStation\": \"BAR\", \"userId\":" + userId.get() + "}]"));
     }
@@ -1,5 +1,6 @@
 package com.cyanelix.railwatch.controller;
 
+import com.cyanelix.railwatch.ApplicationConfiguration;
 import com.cyanelix.railwatch.converter.ScheduleToDTOConverter;
 import com.cyanelix.railwatch.converter.UserEntityToDTOConverter;
 import com.cyanelix.railwatch.domain.*;
@@ -13,21 +14,25 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.core.convert.support.GenericConversionService;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.DayOfWeek;
 import java.time.LocalTime;
 import java.util.Collections;
 
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(UsersController.class)
+@Import(ApplicationConfiguration.class)
 @RunWith(SpringRunner.class)
 public class UsersControllerTest {
     @MockBean
@@ -95,8 +100,11 @@ public class UsersControllerTest {
         given(userService.getUser(userId))
                 .willReturn(new User(userId, "notification-target", UserState.ENABLED));
 
-        mockMvc.perform(
-                get("/users/" + userId.get()))
+        MvcResult mvcResult = mockMvc.perform(get("/users/" + userId.get()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().json("{\"userId\":\"" + userId.get() + "\", \"notificationTarget\":\"notification-target\", \"schedules\":[]}"));
     }
@@ -111,8 +119,11 @@ public class UsersControllerTest {
         given(scheduleService.getSchedulesForUser(user))
                 .willReturn(Collections.singletonList(new Schedule(LocalTime.MIN, LocalTime.MAX, DayRange.of(DayOfWeek.MONDAY), Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user)));
 
-        mockMvc.perform(
-                get("/users/" + userId.get()))
+        MvcResult mvcResult = mockMvc.perform(get("/users/" + userId.get()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isOk())
                 .andExpect(content().json("{\"userId\":\"" + userId.get() + "\", \"notificationTarget\":\"notification-target\", \"schedules\":[{\"startTime\":\"00:00\", \"endTime\":\"23:59\", \"days\":[\"Monday\"], \"fromStation\":\"FOO\", \"toStation\": \"BAR\", \"userId\":" + userId.get() + "}]}"));
     }
@@ -121,8 +132,11 @@ public class UsersControllerTest {
     public void noMatchingUser_getFullDetails_returns404() throws Exception {
         UserId userId = UserId.generate();
 
-        mockMvc.perform(
-                get("/users/" + userId.get()))
+        MvcResult mvcResult = mockMvc.perform(get("/users/" + userId.get()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isNotFound());
     }
 }
@@ -0,0 +1,112 @@
+package com.cyanelix.railwatch.domain;
+
+import org.junit.Test;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class BoardChangeTest {
+    @Test
+    public void identicalBoards_between_noChanges() {
+        // Given...
+        List<TrainTime> board = Collections.singletonList(onTime(LocalTime.NOON));
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(board, board);
+
+        // Then...
+        assertThat(changes, is(empty()));
+    }
+
+    @Test
+    public void onTimeTrainNowLate_between_delayed() {
+        // Given...
+        List<TrainTime> previous = Arrays.asList(onTime(LocalTime.NOON), onTime(LocalTime.of(12, 30)));
+        List<TrainTime> current = Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.of(12, 10)).build(),
+                onTime(LocalTime.of(12, 30)));
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(previous, current);
+
+        // Then...
+        assertThat(changes, hasSize(1));
+        assertThat(changes.get(0).getTrainTime().getScheduledDepartureTime(), is(LocalTime.NOON));
+        assertThat(changes.get(0).getTypes(), is(EnumSet.of(BoardChangeType.DELAYED)));
+        assertThat(changes.get(0).toString(), is("12:00 -> 12:10 (delayed)"));
+    }
+
+    @Test
+    public void lateTrainNowOnTime_between_recovered() {
+        // Given...
+        List<TrainTime> previous = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.of(12, 10)).build());
+        List<TrainTime> current = Collections.singletonList(onTime(LocalTime.NOON));
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(previous, current);
+
+        // Then...
+        assertThat(changes.get(0).getTypes(), is(EnumSet.of(BoardChangeType.RECOVERED)));
+    }
+
+    @Test
+    public void trainCancelled_between_cancelled() {
+        // Given...
+        List<TrainTime> previous = Collections.singletonList(onTime(LocalTime.NOON));
+        List<TrainTime> current = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON).withMessage("Cancelled").build());
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(previous, current);
+
+        // Then...
+        assertThat(changes.get(0).getTypes(), is(EnumSet.of(BoardChangeType.CANCELLED)));
+    }
+
+    @Test
+    public void platformAndFormationChanged_between_bothChangesReported() {
+        // Given...
+        List<TrainTime> previous = Collections.singletonList(new TrainTime.Builder(LocalTime.NOON)
+                .withExpectedDepartureTime(LocalTime.NOON)
+                .withPlatformNumber(1)
+                .withFormation(Formation.NORMAL)
+                .build());
+        List<TrainTime> current = Collections.singletonList(new TrainTime.Builder(LocalTime.NOON)
+                .withExpectedDepartureTime(LocalTime.NOON)
+                .withPlatformNumber(2)
+                .withFormation(Formation.REVERSE)
+                .build());
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(previous, current);
+
+        // Then...
+        assertThat(changes.get(0).getTypes(), is(EnumSet.of(BoardChangeType.PLATFORM_CHANGED, BoardChangeType.FORMATION_CHANGED)));
+    }
+
+    @Test
+    public void newOnTimeTrainOnBoard_between_noChanges() {
+        // Given...
+        List<TrainTime> previous = Collections.singletonList(onTime(LocalTime.NOON));
+        List<TrainTime> current = Arrays.asList(onTime(LocalTime.NOON), onTime(LocalTime.of(12, 30)));
+
+        // When...
+        List<BoardChange> changes = BoardChange.between(previous, current);
+
+        // Then...
+        assertThat(changes, is(empty()));
+    }
+
+    private TrainTime onTime(LocalTime time) {
+        return new TrainTime.Builder(time).withExpectedDepartureTime(time).build();
+    }
+}
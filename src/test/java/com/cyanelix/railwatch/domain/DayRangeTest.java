@@ -122,4 +122,21 @@ public class DayRangeTest {
     public void testEquals() {
         EqualsVerifier.forClass(DayRange.class).verify();
     }
+
+    @Test
+    public void mondayAndSunday_toDayMask_firstAndLastBitsSet() {
+        // Given...
+        DayRange dayRange = DayRange.of(MONDAY, SUNDAY);
+
+        // When...
+        int dayMask = dayRange.toDayMask();
+
+        // Then...
+        assertThat(dayMask, is(0b1000001));
+    }
+
+    @Test
+    public void allDays_toDayMask_allSevenBitsSet() {
+        assertThat(DayRange.ALL.toDayMask(), is(0b1111111));
+    }
 }
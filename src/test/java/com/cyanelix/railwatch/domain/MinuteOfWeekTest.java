@@ -0,0 +1,47 @@
+package com.cyanelix.railwatch.domain;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class MinuteOfWeekTest {
+    @Test
+    public void mondayMidnight_of_firstMinuteOfWeek() {
+        // Given...
+        // 2017-01-02 was a Monday.
+        LocalDateTime dateTime = LocalDateTime.of(2017, Month.JANUARY, 2, 0, 0);
+
+        // When...
+        MinuteOfWeek minuteOfWeek = MinuteOfWeek.of(dateTime);
+
+        // Then...
+        assertThat(minuteOfWeek.getDayBit(), is(1));
+        assertThat(minuteOfWeek.getMinuteOfDay(), is(0));
+        assertThat(minuteOfWeek.getMinuteOfWeek(), is(0));
+    }
+
+    @Test
+    public void sundayAfternoon_of_dayBitAndMinutesSet() {
+        // Given...
+        // 2017-01-01 was a Sunday.
+        LocalDateTime dateTime = LocalDateTime.of(2017, Month.JANUARY, 1, 13, 45, 30);
+
+        // When...
+        MinuteOfWeek minuteOfWeek = MinuteOfWeek.of(dateTime);
+
+        // Then...
+        assertThat(minuteOfWeek.getDayBit(), is(0b1000000));
+        assertThat(minuteOfWeek.getMinuteOfDay(), is(13 * 60 + 45));
+        assertThat(minuteOfWeek.getMinuteOfWeek(), is(6 * 24 * 60 + 13 * 60 + 45));
+    }
+
+    @Test
+    public void equalsContract() {
+        EqualsVerifier.forClass(MinuteOfWeek.class).verify();
+    }
+}
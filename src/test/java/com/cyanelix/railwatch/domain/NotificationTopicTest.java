@@ -0,0 +1,41 @@
+package com.cyanelix.railwatch.domain;
+
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class NotificationTopicTest {
+    @Test
+    public void journeyAndWindow_of_nameIdentifiesBoth() {
+        // Given...
+        Journey journey = Journey.of(Station.of("FOO"), Station.of("BAR"));
+
+        // When...
+        NotificationTopic topic = NotificationTopic.of(journey, DayRange.of(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), LocalTime.of(7, 45), LocalTime.of(9, 0));
+
+        // Then...
+        assertThat(topic.getName(), is("journey-FOO-BAR-0745-0900-11"));
+    }
+
+    @Test
+    public void topic_toNotificationTarget_addressesTopic() {
+        // Given...
+        NotificationTopic topic = NotificationTopic.of(Journey.of(Station.of("FOO"), Station.of("BAR")), DayRange.ALL, LocalTime.of(7, 45), LocalTime.of(9, 0));
+
+        // When...
+        NotificationTarget notificationTarget = topic.toNotificationTarget();
+
+        // Then...
+        assertThat(notificationTarget.getTargetAddress(), is("/topics/journey-FOO-BAR-0745-0900-7f"));
+    }
+
+    @Test
+    public void testEquals() {
+        EqualsVerifier.forClass(NotificationTopic.class).verify();
+    }
+}
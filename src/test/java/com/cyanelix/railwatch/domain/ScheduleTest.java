@@ -69,6 +69,60 @@ public class ScheduleTest {
         assertThat(active, is(false));
     }
 
+    @Test
+    public void timeAtStartOfSchedule_isActive_returnsTrue() {
+        // Given...
+        Schedule schedule = new Schedule(LocalTime.of(9, 0), LocalTime.of(10, 0),
+                DayRange.of(DayOfWeek.SUNDAY), null, null, ScheduleState.ENABLED, null);
+
+        // When...
+        boolean active = schedule.isActive(MinuteOfWeek.of(LocalDateTime.of(2017, Month.JANUARY, 1, 9, 0)));
+
+        // Then...
+        assertThat(active, is(true));
+    }
+
+    @Test
+    public void timeAtEndOfSchedule_isActive_returnsFalse() {
+        // Given...
+        Schedule schedule = new Schedule(LocalTime.of(9, 0), LocalTime.of(10, 0),
+                DayRange.of(DayOfWeek.SUNDAY), null, null, ScheduleState.ENABLED, null);
+
+        // When...
+        boolean active = schedule.isActive(MinuteOfWeek.of(LocalDateTime.of(2017, Month.JANUARY, 1, 10, 0)));
+
+        // Then...
+        assertThat(active, is(false));
+    }
+
+    @Test
+    public void scheduleEndingAtEndOfDay_isActiveInLastMinute_returnsTrue() {
+        // Given...
+        Schedule schedule = new Schedule(LocalTime.of(23, 0), LocalTime.MAX,
+                DayRange.ALL, null, null, ScheduleState.ENABLED, null);
+
+        // When...
+        boolean active = schedule.isActive(MinuteOfWeek.of(LocalDateTime.of(2017, Month.JANUARY, 1, 23, 59)));
+
+        // Then...
+        assertThat(active, is(true));
+        assertThat(schedule.getEndMinute(), is(24 * 60));
+    }
+
+    @Test
+    public void endTimeWithSeconds_getEndMinute_roundedUpToNextMinute() {
+        // Given...
+        Schedule schedule = new Schedule(LocalTime.of(9, 0), LocalTime.of(10, 0, 30),
+                DayRange.ALL, null, null, ScheduleState.ENABLED, null);
+
+        // When...
+        boolean active = schedule.isActive(MinuteOfWeek.of(LocalDateTime.of(2017, Month.JANUARY, 1, 10, 0)));
+
+        // Then...
+        assertThat(active, is(true));
+        assertThat(schedule.getEndMinute(), is(10 * 60 + 1));
+    }
+
     @Test
     public void schedulePopulatedWithValues_toString_containsExpectedValues() {
         // Given...
@@ -87,7 +141,7 @@ public class ScheduleTest {
     public void equalsContract() {
         EqualsVerifier.forClass(Schedule.class)
                 .suppress(Warning.NONFINAL_FIELDS)
-                .withIgnoredFields("id")
+                .withIgnoredFields("id", "dayMask", "startMinute", "endMinute")
                 .verify();
     }
 }
@@ -4,6 +4,7 @@ import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
 import org.junit.Test;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -22,5 +23,21 @@ public class SentNotificationTest {
         assertThat(entity.getTo(), is("FOO"));
         assertThat(entity.getTitle(), is("Title"));
         assertThat(entity.getBody(), is("Body"));
+        assertThat(entity.getDay(), is(LocalDate.of(2017, 1, 1)));
+        assertThat(entity.getContentHash(), is(SentNotification.contentHashOf(notificationRequest)));
+    }
+
+    @Test
+    public void requestsWithDifferentBodies_contentHashOf_differentHashes() {
+        // Given...
+        NotificationRequest request1 = new NotificationRequest(NotificationTarget.of("FOO"), "Title", "Body");
+        NotificationRequest request2 = new NotificationRequest(NotificationTarget.of("FOO"), "Title", "Different body");
+
+        // When...
+        String hash1 = SentNotification.contentHashOf(request1);
+        String hash2 = SentNotification.contentHashOf(request2);
+
+        // Then...
+        assertThat(hash1.equals(hash2), is(false));
     }
 }
@@ -9,7 +9,7 @@ public class UserTest {
     public void equalsContract() {
         EqualsVerifier.forClass(User.class)
                 .suppress(Warning.NONFINAL_FIELDS)
-                .withIgnoredFields("id")
+                .withIgnoredFields("id", "lastHeartbeat")
                 .verify();
     }
 }
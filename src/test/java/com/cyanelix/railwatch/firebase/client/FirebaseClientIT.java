@@ -2,6 +2,7 @@ package com.cyanelix.railwatch.firebase.client;
 
 import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -26,9 +27,9 @@ public class FirebaseClientIT {
                 "Title", "Body");
 
         // When...
-        boolean success = firebaseClient.sendNotification(request);
+        NotificationResult result = firebaseClient.send(request);
 
         // Then...
-        assertThat(success, is(true));
+        assertThat(result.isSuccess(), is(true));
     }
 }
@@ -0,0 +1,113 @@
+package com.cyanelix.railwatch.firebase.client;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import com.cyanelix.railwatch.firebase.stub.FirebaseStub;
+import com.cyanelix.railwatch.service.NotificationDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class FirebaseClientStubTest {
+    private FirebaseStub firebaseStub;
+
+    private FirebaseClient firebaseClient;
+
+    @Before
+    public void setup() throws IOException, URISyntaxException {
+        firebaseStub = new FirebaseStub().start();
+        firebaseClient = new FirebaseClient(new RestTemplateBuilder(), mock(ObjectProvider.class),
+                firebaseStub.getSendUrl(), "stub-key", firebaseStub.getInstanceIdUrl());
+    }
+
+    @After
+    public void tearDown() {
+        firebaseStub.stop();
+    }
+
+    @Test
+    public void registeredToken_send_deliveredAndRecorded() {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("token"), "RailWatch", "body");
+
+        // When...
+        NotificationResult result = firebaseClient.send(request);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        assertThat(firebaseStub.getDeliveredPushes(), is(1));
+        assertThat(firebaseStub.getRecordedRequests().get(0).getAuthorization(), is("key=stub-key"));
+        assertThat(firebaseStub.getRecordedRequests().get(0).getBody().path("notification").path("body").asText(), is("body"));
+    }
+
+    @Test
+    public void unregisteredToken_send_unregisteredResult() {
+        // Given...
+        firebaseStub.withTokenError("dead-token", "NotRegistered");
+
+        // When...
+        NotificationResult result = firebaseClient.send(new NotificationRequest(NotificationTarget.of("dead-token"), "RailWatch", "body"));
+
+        // Then...
+        assertThat(result.isUnregistered(), is(true));
+        assertThat(firebaseStub.getDeliveredPushes(), is(0));
+    }
+
+    @Test
+    public void multicastWithOneInvalidToken_sendMulticast_perRecipientResults() {
+        // Given...
+        firebaseStub.withTokenError("bad-token", "InvalidRegistration");
+        NotificationRequest template = new NotificationRequest(NotificationTarget.of("good-token"), "RailWatch", "body");
+
+        // When...
+        Map<NotificationTarget, NotificationResult> results = firebaseClient.sendMulticast(template,
+                Arrays.asList(NotificationTarget.of("good-token"), NotificationTarget.of("bad-token")));
+
+        // Then...
+        assertThat(results.get(NotificationTarget.of("good-token")).isSuccess(), is(true));
+        assertThat(results.get(NotificationTarget.of("bad-token")).isUnregistered(), is(true));
+        assertThat(firebaseStub.getRecordedRequests().size(), is(1));
+    }
+
+    @Test(expected = HttpServerErrorException.class)
+    public void serverError_send_throwsException() {
+        // Given...
+        firebaseStub.failNextRequests(1, 503);
+
+        // When...
+        firebaseClient.send(new NotificationRequest(NotificationTarget.of("token"), "RailWatch", "body"));
+    }
+
+    @Test
+    public void serverErrorThenSuccess_dispatch_retriedThroughStub() throws Exception {
+        // Given...
+        firebaseStub.failNextRequests(1, 503).withLatency(Duration.ofMillis(10L));
+        NotificationDispatcher notificationDispatcher = new NotificationDispatcher(firebaseClient, new SimpleMeterRegistry(), 2, 10, 3, 1L);
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(new NotificationRequest(NotificationTarget.of("token"), "RailWatch", "body"))
+                .get(5L, TimeUnit.SECONDS);
+        notificationDispatcher.shutdown();
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        assertThat(firebaseStub.getRecordedRequests().size(), is(2));
+    }
+}
@@ -1,8 +1,10 @@
 package com.cyanelix.railwatch.firebase.client;
 
-import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.*;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationResponse;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
@@ -16,8 +18,14 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
@@ -49,10 +57,120 @@ public class FirebaseClientTest {
                 .andRespond(withSuccess(objectMapper.writeValueAsString(successResponse()), MediaType.APPLICATION_JSON));
 
         // When...
-        boolean success = firebaseClient.sendNotification(request);
+        NotificationResult result = firebaseClient.send(request);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        mockServer.verify();
+    }
+
+    @Test
+    public void successCountWithoutResults_send_successWithoutMessageId() throws JsonProcessingException {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("key"), "title", "body");
+
+        mockServer.expect(requestTo(firebaseUrl))
+                .andRespond(withSuccess(objectMapper.writeValueAsString(successResponse()), MediaType.APPLICATION_JSON));
+
+        // When...
+        NotificationResult result = firebaseClient.send(request);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        assertThat(result.getMessageId(), is(nullValue()));
+        mockServer.verify();
+    }
+
+    @Test
+    public void sendToUnregisteredTarget_unregisteredResultReported() {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("key"), "title", "body");
+
+        mockServer.expect(requestTo(firebaseUrl))
+                .andRespond(withSuccess("{\"success\":0,\"failure\":1,\"results\":[{\"error\":\"NotRegistered\"}]}", MediaType.APPLICATION_JSON));
+
+        // When...
+        NotificationResult result = firebaseClient.send(request);
+
+        // Then...
+        assertThat(result.isSuccess(), is(false));
+        assertThat(result.isUnregistered(), is(true));
+        mockServer.verify();
+    }
+
+    @Test
+    public void sendToTopic_topLevelMessageIdTreatedAsSuccess() {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("/topics/journey"), "title", "body");
+
+        mockServer.expect(requestTo(firebaseUrl))
+                .andRespond(withSuccess("{\"message_id\":6177433633397011933}", MediaType.APPLICATION_JSON));
+
+        // When...
+        NotificationResult result = firebaseClient.send(request);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        mockServer.verify();
+    }
+
+    @Test
+    public void multicastToSeveralTargets_perRecipientResultsReported() {
+        // Given...
+        NotificationRequest template = new NotificationRequest(NotificationTarget.of("key1"), "title", "body");
+
+        mockServer.expect(requestTo(firebaseUrl))
+                .andExpect(jsonPath("$.registration_ids", contains("key1", "key2")))
+                .andExpect(jsonPath("$.notification.body", is("body")))
+                .andRespond(withSuccess("{\"success\":1,\"failure\":1,\"results\":[{\"message_id\":\"1:0408\"},{\"error\":\"Unavailable\"}]}", MediaType.APPLICATION_JSON));
+
+        // When...
+        Map<NotificationTarget, NotificationResult> results = firebaseClient.sendMulticast(template, Arrays.asList(NotificationTarget.of("key1"), NotificationTarget.of("key2")));
+
+        // Then...
+        assertThat(results.get(NotificationTarget.of("key1")).isSuccess(), is(true));
+        assertThat(results.get(NotificationTarget.of("key2")).isSuccess(), is(false));
+        assertThat(results.get(NotificationTarget.of("key2")).getError(), is("Unavailable"));
+        mockServer.verify();
+    }
+
+    @Test
+    public void subscribeTargetsToTopic_batchAddRequestSent() {
+        // Given...
+        NotificationTopic topic = NotificationTopic.of(Journey.of(Station.of("FOO"), Station.of("BAR")), DayRange.ALL, LocalTime.of(9, 0), LocalTime.of(10, 0));
+
+        mockServer.expect(requestTo("https://iid.googleapis.com/iid/v1:batchAdd"))
+                .andExpect(jsonPath("$.to", is("/topics/journey-FOO-BAR-0900-1000-7f")))
+                .andExpect(jsonPath("$.registration_tokens", contains("key1", "key2")))
+                .andRespond(withSuccess("{\"results\":[{},{}]}", MediaType.APPLICATION_JSON));
+
+        // When...
+        Map<NotificationTarget, TopicSubscriptionResult> results = firebaseClient.subscribe(topic, Arrays.asList(NotificationTarget.of("key1"), NotificationTarget.of("key2")));
+
+        // Then...
+        assertThat(results.get(NotificationTarget.of("key1")).isSuccess(), is(true));
+        assertThat(results.get(NotificationTarget.of("key2")).isSuccess(), is(true));
+        mockServer.verify();
+    }
+
+    @Test
+    public void someTokensRejected_subscribe_perTokenResultsReturned() {
+        // Given...
+        NotificationTopic topic = NotificationTopic.of(Journey.of(Station.of("FOO"), Station.of("BAR")), DayRange.ALL, LocalTime.of(9, 0), LocalTime.of(10, 0));
+
+        mockServer.expect(requestTo("https://iid.googleapis.com/iid/v1:batchAdd"))
+                .andRespond(withSuccess("{\"results\":[{},{\"error\":\"NOT_FOUND\"},{\"error\":\"INTERNAL\"}]}", MediaType.APPLICATION_JSON));
+
+        // When...
+        Map<NotificationTarget, TopicSubscriptionResult> results = firebaseClient.subscribe(topic,
+                Arrays.asList(NotificationTarget.of("key1"), NotificationTarget.of("key2"), NotificationTarget.of("key3")));
 
         // Then...
-        assertThat(success, is(true));
+        assertThat(results.get(NotificationTarget.of("key1")).isSuccess(), is(true));
+        assertThat(results.get(NotificationTarget.of("key2")).isSuccess(), is(false));
+        assertThat(results.get(NotificationTarget.of("key2")).isInvalidTarget(), is(true));
+        assertThat(results.get(NotificationTarget.of("key3")).isSuccess(), is(false));
+        assertThat(results.get(NotificationTarget.of("key3")).isInvalidTarget(), is(false));
         mockServer.verify();
     }
 
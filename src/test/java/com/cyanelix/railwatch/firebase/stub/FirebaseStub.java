@@ -0,0 +1,210 @@
+package com.cyanelix.railwatch.firebase.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FirebaseStub {
+    private static final String SEND_PATH = "/fcm/send";
+    private static final String INSTANCE_ID_PATH = "/iid/v1";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<RecordedRequest> recordedRequests = new CopyOnWriteArrayList<>();
+    private final Map<String, String> tokenErrors = new ConcurrentHashMap<>();
+    private final AtomicInteger remainingStatusFailures = new AtomicInteger();
+    private final AtomicLong messageIds = new AtomicLong();
+    private final AtomicInteger deliveredPushes = new AtomicInteger();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile int failureStatus = 500;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public FirebaseStub start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(SEND_PATH, this::handleSend);
+        server.createContext(INSTANCE_ID_PATH, this::handleInstanceId);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public void reset() {
+        recordedRequests.clear();
+        tokenErrors.clear();
+        remainingStatusFailures.set(0);
+        deliveredPushes.set(0);
+        latency = Duration.ZERO;
+    }
+
+    public String getSendUrl() {
+        return getBaseUrl() + SEND_PATH;
+    }
+
+    public String getInstanceIdUrl() {
+        return getBaseUrl() + INSTANCE_ID_PATH;
+    }
+
+    public FirebaseStub withLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    public FirebaseStub withTokenError(String token, String error) {
+        tokenErrors.put(token, error);
+        return this;
+    }
+
+    public FirebaseStub failNextRequests(int count, int status) {
+        failureStatus = status;
+        remainingStatusFailures.set(count);
+        return this;
+    }
+
+    public List<RecordedRequest> getRecordedRequests() {
+        return Collections.unmodifiableList(new ArrayList<>(recordedRequests));
+    }
+
+    public int getDeliveredPushes() {
+        return deliveredPushes.get();
+    }
+
+    private String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handleSend(HttpExchange exchange) throws IOException {
+        JsonNode request = record(exchange);
+        pause();
+
+        if (remainingStatusFailures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            respond(exchange, failureStatus, "{\"error\":\"Injected failure\"}");
+            return;
+        }
+
+        ObjectNode response = objectMapper.createObjectNode();
+        if (request.has("registration_ids")) {
+            ArrayNode results = response.putArray("results");
+            int success = 0;
+            for (JsonNode token : request.get("registration_ids")) {
+                success += addResult(results.addObject(), token.asText());
+            }
+            response.put("success", success).put("failure", request.get("registration_ids").size() - success);
+        } else if (request.path("to").asText().startsWith("/topics/")) {
+            response.put("message_id", messageIds.incrementAndGet());
+            deliveredPushes.incrementAndGet();
+        } else {
+            int success = addResult(response.putArray("results").addObject(), request.path("to").asText());
+            response.put("success", success).put("failure", 1 - success);
+        }
+
+        respond(exchange, 200, objectMapper.writeValueAsString(response));
+    }
+
+    private void handleInstanceId(HttpExchange exchange) throws IOException {
+        JsonNode request = record(exchange);
+        pause();
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode results = response.putArray("results");
+        request.path("registration_tokens").forEach(token -> {
+            ObjectNode result = results.addObject();
+            String error = tokenErrors.get(token.asText());
+            if (error != null) {
+                result.put("error", error);
+            }
+        });
+        respond(exchange, 200, objectMapper.writeValueAsString(response));
+    }
+
+    private int addResult(ObjectNode result, String token) {
+        String error = tokenErrors.get(token);
+        if (error != null) {
+            result.put("error", error);
+            return 0;
+        }
+
+        result.put("message_id", "0:" + messageIds.incrementAndGet());
+        deliveredPushes.incrementAndGet();
+        return 1;
+    }
+
+    private JsonNode record(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+        recordedRequests.add(new RecordedRequest(exchange.getRequestURI().getPath(),
+                exchange.getRequestHeaders().getFirst("Authorization"), body));
+        return body;
+    }
+
+    private void pause() {
+        if (latency.isZero()) {
+            return;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(latency.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    public static final class RecordedRequest {
+        private final String path;
+        private final String authorization;
+        private final JsonNode body;
+
+        private RecordedRequest(String path, String authorization, JsonNode body) {
+            this.path = path;
+            this.authorization = authorization;
+            this.body = body;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getAuthorization() {
+            return authorization;
+        }
+
+        public JsonNode getBody() {
+            return body;
+        }
+    }
+}
@@ -3,11 +3,10 @@ package com.cyanelix.railwatch.heartbeat;
 import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
-import com.cyanelix.railwatch.entity.Heartbeat;
 import com.cyanelix.railwatch.entity.User;
 import com.cyanelix.railwatch.firebase.client.FirebaseClient;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
-import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
 import com.cyanelix.railwatch.repository.ScheduleRepository;
 import com.cyanelix.railwatch.repository.UserRepository;
 import com.cyanelix.railwatch.service.HeartbeatService;
@@ -24,6 +23,8 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -41,9 +42,6 @@ public class HeartbeatIT {
     @Autowired
     private ScheduleRepository scheduleRepository;
 
-    @Autowired
-    private HeartbeatRepository heartbeatRepository;
-
     @Autowired
     private UserRepository userRepository;
 
@@ -52,11 +50,11 @@ public class HeartbeatIT {
 
     @Before
     public void setup() {
-        heartbeatRepository.deleteAll();
         scheduleRepository.deleteAll();
+        userRepository.deleteAll();
         doReturn(Instant.parse("2017-01-01T12:00:00Z")).when(clock).instant();
         doReturn(ZoneId.systemDefault()).when(clock).getZone();
-        when(firebaseClient.sendNotification(any())).thenReturn(true);
+        when(firebaseClient.send(any())).thenReturn(new NotificationResult("1:0408", null));
     }
 
     @Test
@@ -72,14 +70,14 @@ public class HeartbeatIT {
         User warningEnabled = new User(UserId.generate(), "warning-enabled", UserState.ENABLED);
         userRepository.saveAll(Arrays.asList(expiringDisabled, expiringEnabled, notExpiringDisabled, notExpiringEnabled, noHeartbeatDisabled, noHeartbeatEnabled, warningDisabled, warningEnabled));
 
-        Heartbeat expiringDisabledHeartbeat = new Heartbeat(NotificationTarget.of("expiring-disabled"), LocalDateTime.of(2016, 12, 22, 11, 59));
-        Heartbeat expiringEnabledHeartbeat = new Heartbeat(NotificationTarget.of("expiring-enabled"), LocalDateTime.of(2016, 12, 22, 11, 59));
-        Heartbeat notExpiringDisabledHeartbeat = new Heartbeat(NotificationTarget.of("not-expiring-disabled"), LocalDateTime.of(2016, 12, 25, 12, 1));
-        Heartbeat notExpiringEnabledHeartbeat = new Heartbeat(NotificationTarget.of("not-expiring-enabled"), LocalDateTime.of(2016, 12, 25, 12, 1));
-        Heartbeat warningDisabledHeartbeat = new Heartbeat(NotificationTarget.of("warning-disabled"), LocalDateTime.of(2016, 12, 25, 11, 59));
-        Heartbeat warningEnabledHeartbeat = new Heartbeat(NotificationTarget.of("warning-enabled"), LocalDateTime.of(2016, 12, 25, 11, 59));
-        heartbeatRepository.saveAll(Arrays.asList(expiringDisabledHeartbeat, expiringEnabledHeartbeat, notExpiringDisabledHeartbeat,
-                notExpiringEnabledHeartbeat, warningDisabledHeartbeat, warningEnabledHeartbeat));
+        Map<String, LocalDateTime> heartbeats = new HashMap<>();
+        heartbeats.put("expiring-disabled", LocalDateTime.of(2016, 12, 22, 11, 59));
+        heartbeats.put("expiring-enabled", LocalDateTime.of(2016, 12, 22, 11, 59));
+        heartbeats.put("not-expiring-disabled", LocalDateTime.of(2016, 12, 25, 12, 1));
+        heartbeats.put("not-expiring-enabled", LocalDateTime.of(2016, 12, 25, 12, 1));
+        heartbeats.put("warning-disabled", LocalDateTime.of(2016, 12, 25, 11, 59));
+        heartbeats.put("warning-enabled", LocalDateTime.of(2016, 12, 25, 11, 59));
+        userRepository.recordHeartbeats(heartbeats);
 
         // When...
         heartbeatService.checkHeartbeats();
@@ -97,7 +95,7 @@ public class HeartbeatIT {
         assertThat(userRepository.findByNotificationTarget("warning-disabled").getUserState(), is(UserState.DISABLED));
         assertThat(userRepository.findByNotificationTarget("warning-enabled").getUserState(), is(UserState.ENABLED));
 
-        verify(firebaseClient).sendNotification(
+        verify(firebaseClient, timeout(5000L)).send(
                 new NotificationRequest(NotificationTarget.of("warning-enabled"), "RailWatch", "Open the RailWatch app to keep your train time notifications coming!"));
     }
 }
@@ -0,0 +1,133 @@
+package com.cyanelix.railwatch.notification;
+
+import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.firebase.stub.FirebaseStub;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
+import com.cyanelix.railwatch.repository.ScheduleRepository;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import com.cyanelix.railwatch.repository.UserRepository;
+import com.cyanelix.railwatch.service.ScheduleService;
+import com.cyanelix.railwatch.service.TrainTimesService;
+import com.cyanelix.railwatch.service.UserService;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"schedules.poll-period=1000", "schedules.poll-slot=1000"})
+@ContextConfiguration(initializers = NotificationThroughputIT.FirebaseStubInitializer.class)
+public class NotificationThroughputIT {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationThroughputIT.class);
+
+    private static final int USERS = Integer.getInteger("benchmark.users", 500);
+    private static final int JOURNEYS = Integer.getInteger("benchmark.journeys", 20);
+    private static final Duration FIREBASE_LATENCY = Duration.ofMillis(Long.getLong("benchmark.firebase-latency", 20L));
+
+    private static FirebaseStub firebaseStub;
+
+    @MockBean
+    private TrainTimesService trainTimesService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private OutboxNotificationRepository outboxNotificationRepository;
+
+    @Autowired
+    private SentNotificationRepository sentNotificationRepository;
+
+    @BeforeClass
+    public static void startFirebaseStub() throws IOException {
+        firebaseStub = new FirebaseStub().start();
+    }
+
+    @AfterClass
+    public static void stopFirebaseStub() {
+        firebaseStub.stop();
+    }
+
+    @Before
+    public void setup() {
+        scheduleRepository.deleteAll();
+        userRepository.deleteAll();
+        outboxNotificationRepository.deleteAll();
+        sentNotificationRepository.deleteAll();
+        firebaseStub.reset();
+        firebaseStub.withLatency(FIREBASE_LATENCY);
+
+        List<TrainTime> trainTimes = Arrays.asList(
+                new TrainTime.Builder(LocalTime.of(8, 0)).withExpectedDepartureTime(LocalTime.of(8, 0)).build(),
+                new TrainTime.Builder(LocalTime.of(8, 30)).withExpectedDepartureTime(LocalTime.of(8, 35)).build());
+        given(trainTimesService.lookupTrainTimes(any(), any())).willReturn(trainTimes);
+    }
+
+    @Test
+    public void manyUsersOnSharedJourneys_oneTick_everyUserNotified() throws InterruptedException {
+        // Given...
+        for (int i = 0; i < USERS; i++) {
+            User user = userService.createUser(NotificationTarget.of("token-" + i));
+            int journey = i % JOURNEYS;
+            scheduleService.createSchedule(new Schedule(LocalTime.MIN, LocalTime.MAX, DayRange.ALL,
+                    Station.of("F" + journey), Station.of("T" + journey), ScheduleState.ENABLED, user), user.getUserId());
+        }
+
+        // When...
+        long start = System.nanoTime();
+        scheduleService.checkTimes();
+        while (firebaseStub.getDeliveredPushes() < USERS && System.nanoTime() - start < Duration.ofMinutes(2L).toNanos()) {
+            Thread.sleep(10L);
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // Then...
+        LOG.info("Delivered {} pushes for {} users on {} journeys in {}ms using {} Firebase requests ({} pushes/s).",
+                firebaseStub.getDeliveredPushes(), USERS, JOURNEYS, elapsed.toMillis(), firebaseStub.getRecordedRequests().size(),
+                firebaseStub.getDeliveredPushes() * 1000L / Math.max(1L, elapsed.toMillis()));
+        assertThat(firebaseStub.getDeliveredPushes(), is(USERS));
+    }
+
+    static class FirebaseStubInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext applicationContext) {
+            TestPropertyValues.of(
+                    "firebase.url=" + firebaseStub.getSendUrl(),
+                    "firebase.iid.url=" + firebaseStub.getInstanceIdUrl())
+                    .applyTo(applicationContext);
+        }
+    }
+}
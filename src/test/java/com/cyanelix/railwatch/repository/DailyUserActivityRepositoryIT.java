@@ -0,0 +1,107 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.entity.DailyUserActivity;
+import com.cyanelix.railwatch.entity.SentNotification;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+public class DailyUserActivityRepositoryIT {
+    private static final LocalDate DAY = LocalDate.of(2017, Month.JANUARY, 9);
+
+    @Autowired
+    private DailyUserActivityRepository dailyUserActivityRepository;
+
+    @Autowired
+    private SentNotificationRepository sentNotificationRepository;
+
+    @Before
+    public void setup() {
+        dailyUserActivityRepository.deleteAll();
+        sentNotificationRepository.deleteAll();
+    }
+
+    @Test
+    public void notificationsAndHeartbeatsOnDay_rollUp_dailyAggregatePerUser() {
+        // Given...
+        sentNotificationRepository.saveAll(Arrays.asList(
+                sentNotification("foo", DAY.atTime(8, 0)),
+                sentNotification("foo", DAY.atTime(17, 30)),
+                sentNotification("bar", DAY.atTime(9, 0)),
+                sentNotification("foo", DAY.plusDays(1).atTime(8, 0))));
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("foo", DAY.atTime(18, 0)));
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("baz", DAY.atTime(12, 0)));
+
+        // When...
+        int rolledUp = dailyUserActivityRepository.rollUp(DAY);
+
+        // Then...
+        assertThat(rolledUp, is(2));
+        Map<String, DailyUserActivity> byTarget = dailyUserActivityRepository.findAll().stream()
+                .collect(Collectors.toMap(DailyUserActivity::getNotificationTarget, Function.identity()));
+        assertThat(byTarget.keySet(), containsInAnyOrder("foo", "bar", "baz"));
+        assertThat(byTarget.get("foo").getNotificationsSent(), is(2L));
+        assertThat(byTarget.get("foo").getLastHeartbeat(), is(DAY.atTime(18, 0)));
+        assertThat(byTarget.get("bar").getNotificationsSent(), is(1L));
+        assertThat(byTarget.get("bar").getLastHeartbeat(), is(nullValue()));
+        assertThat(byTarget.get("baz").getNotificationsSent(), is(0L));
+        assertThat(byTarget.get("baz").getLastHeartbeat(), is(DAY.atTime(12, 0)));
+    }
+
+    @Test
+    public void heartbeatsThroughoutDay_recordHeartbeats_latestKeptPerDay() {
+        // When...
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("foo", DAY.atTime(7, 5)));
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("foo", DAY.atTime(7, 50)));
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("foo", DAY.atTime(7, 20)));
+        dailyUserActivityRepository.recordHeartbeats(Collections.singletonMap("foo", DAY.plusDays(1).atTime(6, 0)));
+
+        // Then...
+        List<DailyUserActivity> activity = dailyUserActivityRepository.findByNotificationTargetAndDayBetween("foo", DAY, DAY.plusDays(1));
+        assertThat(activity, hasSize(2));
+        Map<LocalDate, LocalDateTime> lastHeartbeatByDay = activity.stream()
+                .collect(Collectors.toMap(DailyUserActivity::getDay, DailyUserActivity::getLastHeartbeat));
+        assertThat(lastHeartbeatByDay.get(DAY), is(DAY.atTime(7, 50)));
+        assertThat(lastHeartbeatByDay.get(DAY.plusDays(1)), is(DAY.plusDays(1).atTime(6, 0)));
+    }
+
+    @Test
+    public void dayAlreadyRolledUp_rollUpAgain_aggregatesNotDuplicated() {
+        // Given...
+        sentNotificationRepository.save(sentNotification("foo", DAY.atTime(8, 0)));
+        dailyUserActivityRepository.rollUp(DAY);
+
+        // When...
+        dailyUserActivityRepository.rollUp(DAY);
+
+        // Then...
+        List<DailyUserActivity> activity = dailyUserActivityRepository.findByNotificationTargetAndDayBetween("foo", DAY, DAY);
+        assertThat(activity, hasSize(1));
+        assertThat(activity.get(0).getNotificationsSent(), is(1L));
+    }
+
+    private SentNotification sentNotification(String to, LocalDateTime sentDateTime) {
+        return new SentNotification(to, "RailWatch", "body", "high", sentDateTime);
+    }
+}
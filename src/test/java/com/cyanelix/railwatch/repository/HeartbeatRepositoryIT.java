@@ -2,15 +2,20 @@ package com.cyanelix.railwatch.repository;
 
 import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.entity.Heartbeat;
+import org.bson.Document;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.Month;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -27,6 +32,14 @@ public class HeartbeatRepositoryIT {
     @Autowired
     private HeartbeatRepository heartbeatRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setup() {
+        heartbeatRepository.deleteAll();
+    }
+
     @Test
     public void saveHeartbeat_findAll_returnsSavedEntityWithId() {
         // Given...
@@ -78,4 +91,40 @@ public class HeartbeatRepositoryIT {
         assertThat(heartbeat, is(notNullValue()));
         assertThat(heartbeat.getDateTime().getMinute(), is(1));
     }
+
+    @Test
+    public void heartbeatsInSameSampleWindow_recordSamples_oneSampleKept() {
+        // Given...
+        Duration sampleInterval = Duration.ofHours(1);
+        heartbeatRepository.recordSamples(Collections.singletonMap("foo", LocalDateTime.of(2017, Month.JANUARY, 1, 12, 10)), sampleInterval);
+
+        // When...
+        heartbeatRepository.recordSamples(Collections.singletonMap("foo", LocalDateTime.of(2017, Month.JANUARY, 1, 12, 50)), sampleInterval);
+        heartbeatRepository.recordSamples(Collections.singletonMap("foo", LocalDateTime.of(2017, Month.JANUARY, 1, 13, 5)), sampleInterval);
+
+        // Then...
+        List<Heartbeat> heartbeats = heartbeatRepository.findAll();
+        assertThat(heartbeats, hasSize(2));
+        assertThat(heartbeatRepository.findFirstByNotificationTargetEqualsOrderByDateTimeDesc(NotificationTarget.of("foo")).getDateTime(),
+                is(LocalDateTime.of(2017, Month.JANUARY, 1, 13, 5)));
+    }
+
+    @Test
+    public void retentionChanged_ensureRetention_ttlIndexUpdated() {
+        // Given...
+        heartbeatRepository.ensureRetention(Duration.ofDays(30));
+
+        // When...
+        heartbeatRepository.ensureRetention(Duration.ofDays(7));
+
+        // Then...
+        Document ttlIndex = null;
+        for (Document index : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Heartbeat.class)).listIndexes()) {
+            if ("dateTime_ttl".equals(index.getString("name"))) {
+                ttlIndex = index;
+            }
+        }
+        assertThat(ttlIndex, is(notNullValue()));
+        assertThat(((Number) ttlIndex.get("expireAfterSeconds")).longValue(), is(Duration.ofDays(7).getSeconds()));
+    }
 }
@@ -0,0 +1,134 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.OutboxState;
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+public class OutboxNotificationRepositoryIT {
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, Month.JANUARY, 9, 8, 0);
+
+    @Autowired
+    private OutboxNotificationRepository outboxNotificationRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Before
+    public void setup() {
+        outboxNotificationRepository.deleteAll();
+    }
+
+    @Test
+    public void claimedNotification_markSent_completedDateTimeSet() {
+        // Given...
+        outboxNotificationRepository.save(new OutboxNotification("foo", "RailWatch", "body", null, "hash", NOW));
+        List<OutboxNotification> claimed = outboxNotificationRepository.claimBatch("owner", 1, NOW, NOW.minusMinutes(5));
+
+        // When...
+        outboxNotificationRepository.markSent("owner", Collections.singletonList(claimed.get(0).getId()), NOW.plusSeconds(1));
+
+        // Then...
+        OutboxNotification sent = outboxNotificationRepository.findAll().get(0);
+        assertThat(sent.getState(), is(OutboxState.SENT));
+        assertThat(sent.getCompletedDateTime(), is(NOW.plusSeconds(1)));
+    }
+
+    @Test
+    public void claimedNotification_markFailed_completedDateTimeSet() {
+        // Given...
+        outboxNotificationRepository.save(new OutboxNotification("foo", "RailWatch", "body", null, "hash", NOW));
+        List<OutboxNotification> claimed = outboxNotificationRepository.claimBatch("owner", 1, NOW, NOW.minusMinutes(5));
+
+        // When...
+        outboxNotificationRepository.markFailed("owner", Collections.singletonList(claimed.get(0).getId()), NOW.plusSeconds(1));
+
+        // Then...
+        OutboxNotification failed = outboxNotificationRepository.findAll().get(0);
+        assertThat(failed.getState(), is(OutboxState.FAILED));
+        assertThat(failed.getCompletedDateTime(), is(NOW.plusSeconds(1)));
+    }
+
+    @Test
+    public void claimedNotification_release_pendingAgain() {
+        // Given...
+        outboxNotificationRepository.save(new OutboxNotification("foo", "RailWatch", "body", null, "hash", NOW));
+        List<OutboxNotification> claimed = outboxNotificationRepository.claimBatch("owner", 1, NOW, NOW.minusMinutes(5));
+
+        // When...
+        outboxNotificationRepository.release("owner", Collections.singletonList(claimed.get(0).getId()));
+
+        // Then...
+        assertThat(outboxNotificationRepository.claimBatch("owner", 1, NOW, NOW.minusMinutes(5)), hasSize(1));
+    }
+
+    @Test
+    public void notificationReclaimedByAnotherOwner_markSentByStaleOwner_notUpdated() {
+        // Given...
+        outboxNotificationRepository.save(new OutboxNotification("foo", "RailWatch", "body", null, "hash", NOW));
+        List<OutboxNotification> claimed = outboxNotificationRepository.claimBatch("stale-owner", 1, NOW, NOW.minusMinutes(5));
+        outboxNotificationRepository.claimBatch("new-owner", 1, NOW.plusMinutes(10), NOW.plusMinutes(5));
+
+        // When...
+        outboxNotificationRepository.markSent("stale-owner", Collections.singletonList(claimed.get(0).getId()), NOW.plusMinutes(11));
+
+        // Then...
+        OutboxNotification reclaimed = outboxNotificationRepository.findAll().get(0);
+        assertThat(reclaimed.getState(), is(OutboxState.CLAIMED));
+        assertThat(reclaimed.getOwner(), is("new-owner"));
+    }
+
+    @Test
+    public void notificationReclaimedByAnotherOwner_releaseByStaleOwner_notUpdated() {
+        // Given...
+        outboxNotificationRepository.save(new OutboxNotification("foo", "RailWatch", "body", null, "hash", NOW));
+        List<OutboxNotification> claimed = outboxNotificationRepository.claimBatch("stale-owner", 1, NOW, NOW.minusMinutes(5));
+        outboxNotificationRepository.claimBatch("new-owner", 1, NOW.plusMinutes(10), NOW.plusMinutes(5));
+
+        // When...
+        outboxNotificationRepository.release("stale-owner", Collections.singletonList(claimed.get(0).getId()));
+
+        // Then...
+        OutboxNotification reclaimed = outboxNotificationRepository.findAll().get(0);
+        assertThat(reclaimed.getState(), is(OutboxState.CLAIMED));
+        assertThat(reclaimed.getOwner(), is("new-owner"));
+    }
+
+    @Test
+    public void retentionChanged_ensureRetention_ttlIndexUpdated() {
+        // Given...
+        outboxNotificationRepository.ensureRetention(Duration.ofDays(1));
+
+        // When...
+        outboxNotificationRepository.ensureRetention(Duration.ofDays(3));
+
+        // Then...
+        Document ttlIndex = null;
+        for (Document index : mongoTemplate.getCollection(mongoTemplate.getCollectionName(OutboxNotification.class)).listIndexes()) {
+            if ("completedDateTime_ttl".equals(index.getString("name"))) {
+                ttlIndex = index;
+            }
+        }
+        assertThat(ttlIndex, is(notNullValue()));
+        assertThat(((Number) ttlIndex.get("expireAfterSeconds")).longValue(), is(Duration.ofDays(3).getSeconds()));
+    }
+}
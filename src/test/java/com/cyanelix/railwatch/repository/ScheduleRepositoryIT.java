@@ -3,6 +3,10 @@ package com.cyanelix.railwatch.repository;
 import com.cyanelix.railwatch.domain.*;
 import com.cyanelix.railwatch.entity.Schedule;
 import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.entity.UserSnapshot;
+import com.mongodb.DBRef;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -10,12 +14,14 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
-import org.springframework.data.mapping.MappingException;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.DayOfWeek;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -32,6 +38,9 @@ public class ScheduleRepositoryIT {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Before
     public void setup() {
         userRepository.deleteAll();
@@ -93,14 +102,14 @@ public class ScheduleRepositoryIT {
         scheduleRepository.saveAll(Arrays.asList(schedule1, schedule2));
 
         // When...
-        List<Schedule> scheduleEntities = scheduleRepository.findByUser(user1);
+        List<Schedule> scheduleEntities = scheduleRepository.findByUserUserId(user1.getUserId());
 
         // Then...
         assertThat(scheduleEntities).containsExactly(schedule1);
     }
 
     @Test
-    public void singleSchedule_getByNonExistentUser_throwsException() {
+    public void singleSchedule_getByNonExistentUser_returnsNothing() {
         // Given...
         User user = new User(UserId.generate(), "notification-target", UserState.ENABLED);
         userRepository.save(user);
@@ -110,15 +119,124 @@ public class ScheduleRepositoryIT {
 
         scheduleRepository.save(schedule);
 
-        User userToSearchBy = new User(UserId.generate(), "different-target", UserState.ENABLED);
+        // When...
+        List<Schedule> scheduleEntities = scheduleRepository.findByUserUserId(UserId.generate());
+
+        // Then...
+        assertThat(scheduleEntities).isEmpty();
+    }
+
+    @Test
+    public void schedulesOfSeveralUsers_updateUserState_onlyThoseUsersSchedulesUpdated() {
+        // Given...
+        User user1 = new User(UserId.generate(), "notification-target", UserState.ENABLED);
+        User user2 = new User(UserId.generate(), "notification-target-2", UserState.ENABLED);
+        userRepository.saveAll(Arrays.asList(user1, user2));
+
+        scheduleRepository.saveAll(Arrays.asList(
+                new Schedule(LocalTime.NOON, LocalTime.MIDNIGHT, DayRange.ALL, Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user1),
+                new Schedule(LocalTime.MIN, LocalTime.NOON, DayRange.ALL, Station.of("BAR"), Station.of("FOO"), ScheduleState.ENABLED, user1),
+                new Schedule(LocalTime.MIN, LocalTime.NOON, DayRange.ALL, Station.of("BAZ"), Station.of("FOB"), ScheduleState.ENABLED, user2)));
+
+        // When...
+        int updated = scheduleRepository.updateUserState(Collections.singletonList(user1.getUserId()), UserState.DISABLED);
+
+        // Then...
+        assertThat(updated).isEqualTo(2);
+        assertThat(scheduleRepository.findByUserUserId(user1.getUserId()))
+                .extracting(schedule -> schedule.getUser().getUserState())
+                .containsOnly(UserState.DISABLED);
+        assertThat(scheduleRepository.findByUserUserId(user2.getUserId()))
+                .extracting(schedule -> schedule.getUser().getUserState())
+                .containsOnly(UserState.ENABLED);
+    }
+
+    @Test
+    public void scheduleReferencingUser_embedUserSnapshots_referenceReplacedBySnapshot() {
+        // Given...
+        User user = new User(UserId.generate(), "notification-target", UserState.ENABLED);
+        userRepository.save(user);
+        Document storedUser = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .find(new Document("notificationTarget", "notification-target")).first();
+
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Schedule.class)).insertMany(Arrays.asList(
+                new Document("state", "ENABLED").append("user", new DBRef(mongoTemplate.getCollectionName(User.class), storedUser.get("_id"))),
+                new Document("state", "ENABLED").append("user", new DBRef(mongoTemplate.getCollectionName(User.class), new ObjectId()))));
+
+        // When...
+        int migrated = scheduleRepository.embedUserSnapshots();
+
+        // Then...
+        assertThat(migrated).isEqualTo(2);
+        assertThat(scheduleRepository.findByUserUserId(user.getUserId()))
+                .extracting(Schedule::getUser)
+                .containsExactly(UserSnapshot.of(user));
+        assertThat(scheduleRepository.embedUserSnapshots()).isZero();
+    }
+
+    @Test
+    public void schedulesWithDifferentWindows_findActiveAt_onlyActiveSchedulesOfEnabledUsersReturned() {
+        // Given...
+        User user = new User(UserId.generate(), "notification-target", UserState.ENABLED);
+        User disabledUser = new User(UserId.generate(), "notification-target-2", UserState.DISABLED);
+        userRepository.saveAll(Arrays.asList(user, disabledUser));
+
+        Schedule active = new Schedule(LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.of(DayOfWeek.MONDAY),
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        Schedule otherDay = new Schedule(LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.of(DayOfWeek.TUESDAY),
+                Station.of("FOO"), Station.of("BAZ"), ScheduleState.ENABLED, user);
+        Schedule endedAtMinute = new Schedule(LocalTime.of(6, 0), LocalTime.of(8, 0), DayRange.ALL,
+                Station.of("BAR"), Station.of("FOO"), ScheduleState.ENABLED, user);
+        Schedule disabled = new Schedule(LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.ALL,
+                Station.of("BAZ"), Station.of("FOO"), ScheduleState.DISABLED, user);
+        Schedule ofDisabledUser = new Schedule(LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.ALL,
+                Station.of("FOB"), Station.of("FOO"), ScheduleState.ENABLED, disabledUser);
+        scheduleRepository.saveAll(Arrays.asList(active, otherDay, endedAtMinute, disabled, ofDisabledUser));
+
+        // When...
+        List<Schedule> scheduleEntities = scheduleRepository.findActiveAt(MinuteOfWeek.of(LocalDateTime.of(2018, 1, 1, 8, 0)));
+
+        // Then...
+        assertThat(scheduleEntities).containsExactly(active);
+    }
+
+    @Test
+    public void scheduleWithoutActivationFields_backfillActivationFields_scheduleFoundByActiveQuery() {
+        // Given...
+        User user = new User(UserId.generate(), "notification-target", UserState.ENABLED);
+        userRepository.save(user);
+
+        Schedule schedule = new Schedule(LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        scheduleRepository.save(schedule);
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Schedule.class)).updateMany(new Document(),
+                new Document("$unset", new Document("dayMask", "").append("startMinute", "").append("endMinute", "")));
+
+        // When...
+        int backfilled = scheduleRepository.backfillActivationFields();
+
+        // Then...
+        assertThat(backfilled).isEqualTo(1);
+        assertThat(scheduleRepository.findActiveAt(MinuteOfWeek.of(LocalDateTime.of(2018, 1, 1, 8, 0)))).containsExactly(schedule);
+    }
 
-        expectedException.expect(MappingException.class);
-        expectedException.expectMessage("Cannot create a reference to an object with a NULL id.");
+    @Test
+    public void scheduleEndingAtEndOfDayStoredWithLastMinute_backfillActivationFields_activeInLastMinute() {
+        // Given...
+        User user = new User(UserId.generate(), "notification-target", UserState.ENABLED);
+        userRepository.save(user);
+
+        Schedule schedule = new Schedule(LocalTime.of(23, 0), LocalTime.MAX, DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        scheduleRepository.save(schedule);
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Schedule.class)).updateMany(new Document(),
+                new Document("$set", new Document("endMinute", 24 * 60 - 1)));
 
         // When...
-        scheduleRepository.findByUser(userToSearchBy);
+        int backfilled = scheduleRepository.backfillActivationFields();
 
         // Then...
-        // (exception expected)
+        assertThat(backfilled).isEqualTo(1);
+        assertThat(scheduleRepository.findActiveAt(MinuteOfWeek.of(LocalDateTime.of(2018, 1, 1, 23, 59)))).containsExactly(schedule);
     }
 }
@@ -0,0 +1,71 @@
+package com.cyanelix.railwatch.repository;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.entity.SentBoard;
+import com.cyanelix.railwatch.entity.SentNotification;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@DataMongoTest
+public class SentNotificationRepositoryIT {
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, Month.JANUARY, 9, 8, 0);
+
+    @Autowired
+    private SentNotificationRepository sentNotificationRepository;
+
+    @Before
+    public void setup() {
+        sentNotificationRepository.deleteAll();
+    }
+
+    @Test
+    public void boardAndPlainNotifications_findBySentDateTimeAfterAndJourneyIsNotNull_onlyBoardsReturned() {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("foo"), "RailWatch", "08:15 FOO -> BAR");
+        sentNotificationRepository.saveAll(Arrays.asList(
+                SentNotification.of(request, "FOO-BAR", "board-hash", NOW),
+                SentNotification.of(request, NOW.plusMinutes(1))));
+
+        // When...
+        List<SentBoard> sentBoards = sentNotificationRepository.findBySentDateTimeAfterAndJourneyIsNotNull(NOW.minusHours(1));
+
+        // Then...
+        assertThat(sentBoards, hasSize(1));
+        SentBoard sentBoard = sentBoards.get(0);
+        assertThat(sentBoard.getTo(), is("foo"));
+        assertThat(sentBoard.getJourney(), is("FOO-BAR"));
+        assertThat(sentBoard.getContentHash(), is("board-hash"));
+        assertThat(sentBoard.getSentDateTime(), is(NOW));
+    }
+
+    @Test
+    public void boardSentBeforeFilter_findBySentDateTimeAfterAndJourneyIsNotNull_notReturned() {
+        // Given...
+        NotificationRequest request = new NotificationRequest(NotificationTarget.of("foo"), "RailWatch", "08:15 FOO -> BAR");
+        sentNotificationRepository.saveAll(Arrays.asList(
+                SentNotification.of(request, "FOO-BAR", "old-hash", NOW.minusHours(2)),
+                SentNotification.of(request, "FOO-BAR", "new-hash", NOW)));
+
+        // When...
+        List<SentBoard> sentBoards = sentNotificationRepository.findBySentDateTimeAfterAndJourneyIsNotNull(NOW.minusHours(1));
+
+        // Then...
+        assertThat(sentBoards, hasSize(1));
+        assertThat(sentBoards.get(0).getContentHash(), is("new-hash"));
+    }
+}
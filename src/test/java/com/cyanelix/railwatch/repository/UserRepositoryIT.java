@@ -1,19 +1,36 @@
 package com.cyanelix.railwatch.repository;
 
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
+import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
+import com.cyanelix.railwatch.entity.Heartbeat;
+import com.cyanelix.railwatch.entity.StaleHeartbeat;
 import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.entity.UserHeartbeat;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.hamcrest.core.IsNull.nullValue;
@@ -26,9 +43,17 @@ public class UserRepositoryIT {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private HeartbeatRepository heartbeatRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Before
     public void setup() {
         userRepository.deleteAll();
+        heartbeatRepository.deleteAll();
+        mongoTemplate.dropCollection(UserRepositoryImpl.MIGRATIONS_COLLECTION);
     }
 
     @Test
@@ -98,4 +123,167 @@ public class UserRepositoryIT {
         // Then...
         assertThat(returnedUser, is(nullValue()));
     }
+
+    @Test
+    public void userWithoutHeartbeat_recordHeartbeats_lastHeartbeatSet() {
+        // Given...
+        userRepository.save(new User(UserId.generate(), "foo", UserState.ENABLED));
+        LocalDateTime heartbeat = LocalDateTime.of(2017, Month.JANUARY, 1, 12, 0);
+
+        // When...
+        int updated = userRepository.recordHeartbeats(Collections.singletonMap("foo", heartbeat));
+
+        // Then...
+        assertThat(updated, is(1));
+        assertThat(userRepository.findByNotificationTarget("foo").getLastHeartbeat(), is(heartbeat));
+    }
+
+    @Test
+    public void userWithNewerHeartbeat_recordHeartbeats_lastHeartbeatUnchanged() {
+        // Given...
+        userRepository.save(new User(UserId.generate(), "foo", UserState.ENABLED));
+        LocalDateTime newer = LocalDateTime.of(2017, Month.JANUARY, 1, 12, 0);
+        userRepository.recordHeartbeats(Collections.singletonMap("foo", newer));
+
+        // When...
+        int updated = userRepository.recordHeartbeats(Collections.singletonMap("foo", newer.minusMinutes(1)));
+
+        // Then...
+        assertThat(updated, is(0));
+        assertThat(userRepository.findByNotificationTarget("foo").getLastHeartbeat(), is(newer));
+    }
+
+    @Test
+    public void heartbeatsForKnownAndUnknownDevices_recordHeartbeats_onlyKnownUsersUpdated() {
+        // Given...
+        userRepository.save(new User(UserId.generate(), "foo", UserState.ENABLED));
+        Map<String, LocalDateTime> heartbeats = new HashMap<>();
+        heartbeats.put("foo", LocalDateTime.of(2017, Month.JANUARY, 1, 12, 0));
+        heartbeats.put("unknown", LocalDateTime.of(2017, Month.JANUARY, 1, 12, 0));
+
+        // When...
+        int updated = userRepository.recordHeartbeats(heartbeats);
+
+        // Then...
+        assertThat(updated, is(1));
+        assertThat(userRepository.findAll(), hasSize(1));
+    }
+
+    @Test
+    public void heartbeatHistory_backfillLastHeartbeats_latestCopiedOntoUsers() {
+        // Given...
+        userRepository.saveAll(Arrays.asList(
+                new User(UserId.generate(), "foo", UserState.ENABLED),
+                new User(UserId.generate(), "bar", UserState.ENABLED)));
+        heartbeatRepository.saveAll(Arrays.asList(
+                new Heartbeat(NotificationTarget.of("foo"), LocalDateTime.of(2016, Month.DECEMBER, 20, 12, 0)),
+                new Heartbeat(NotificationTarget.of("foo"), LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0)),
+                new Heartbeat(NotificationTarget.of("unknown"), LocalDateTime.of(2016, Month.DECEMBER, 1, 12, 0))));
+
+        // When...
+        int backfilled = userRepository.backfillLastHeartbeats();
+
+        // Then...
+        assertThat(backfilled, is(1));
+        assertThat(userRepository.findByNotificationTarget("foo").getLastHeartbeat(), is(LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0)));
+        assertThat(userRepository.findByNotificationTarget("bar").getLastHeartbeat(), is(nullValue()));
+    }
+
+    @Test
+    public void userWithLastHeartbeat_backfillLastHeartbeats_userLeftAlone() {
+        // Given...
+        userRepository.save(new User(UserId.generate(), "foo", UserState.ENABLED));
+        userRepository.recordHeartbeats(Collections.singletonMap("foo", LocalDateTime.of(2016, Month.DECEMBER, 20, 12, 0)));
+        heartbeatRepository.save(new Heartbeat(NotificationTarget.of("foo"), LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0)));
+
+        // When...
+        int backfilled = userRepository.backfillLastHeartbeats();
+
+        // Then...
+        assertThat(backfilled, is(0));
+        assertThat(userRepository.findByNotificationTarget("foo").getLastHeartbeat(), is(LocalDateTime.of(2016, Month.DECEMBER, 20, 12, 0)));
+    }
+
+    @Test
+    public void backfillAlreadyCompleted_backfillLastHeartbeats_usersNotQueriedAgain() {
+        // Given...
+        userRepository.backfillLastHeartbeats();
+        userRepository.save(new User(UserId.generate(), "foo", UserState.ENABLED));
+        heartbeatRepository.save(new Heartbeat(NotificationTarget.of("foo"), LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0)));
+
+        // When...
+        int backfilled = userRepository.backfillLastHeartbeats();
+
+        // Then...
+        assertThat(backfilled, is(0));
+        assertThat(userRepository.findByNotificationTarget("foo").getLastHeartbeat(), is(nullValue()));
+        assertThat(mongoTemplate.exists(new Query(Criteria.where("_id").is(UserRepositoryImpl.BACKFILL_MIGRATION)), UserRepositoryImpl.MIGRATIONS_COLLECTION), is(true));
+    }
+
+    @Test
+    public void usersWithHeartbeatsOfVaryingAge_findStaleHeartbeatsOfEnabledUsers_enabledUsersClassified() {
+        // Given...
+        userRepository.saveAll(Arrays.asList(
+                new User(UserId.generate(), "expired", UserState.ENABLED),
+                new User(UserId.generate(), "stale", UserState.ENABLED),
+                new User(UserId.generate(), "recent", UserState.ENABLED),
+                new User(UserId.generate(), "disabled", UserState.DISABLED),
+                new User(UserId.generate(), "no-heartbeat", UserState.ENABLED)));
+        Map<String, LocalDateTime> heartbeats = new HashMap<>();
+        heartbeats.put("expired", LocalDateTime.of(2016, Month.DECEMBER, 20, 12, 0));
+        heartbeats.put("stale", LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0));
+        heartbeats.put("recent", LocalDateTime.of(2016, Month.DECEMBER, 31, 12, 0));
+        heartbeats.put("disabled", LocalDateTime.of(2016, Month.DECEMBER, 1, 12, 0));
+        userRepository.recordHeartbeats(heartbeats);
+
+        // When...
+        List<StaleHeartbeat> staleHeartbeats = userRepository.findStaleHeartbeatsOfEnabledUsers(
+                LocalDateTime.of(2016, Month.DECEMBER, 25, 12, 0), LocalDateTime.of(2016, Month.DECEMBER, 22, 12, 0));
+
+        // Then...
+        Map<String, StaleHeartbeat> byTarget = staleHeartbeats.stream()
+                .collect(Collectors.toMap(staleHeartbeat -> staleHeartbeat.getNotificationTarget().getTargetAddress(), Function.identity()));
+        assertThat(byTarget.keySet(), containsInAnyOrder("expired", "stale"));
+        assertThat(byTarget.get("expired").getStatus(), is(HeartbeatStatus.DISABLE));
+        assertThat(byTarget.get("stale").getStatus(), is(HeartbeatStatus.WARN));
+        assertThat(byTarget.get("stale").getLastHeartbeat(), is(LocalDateTime.of(2016, Month.DECEMBER, 24, 12, 0)));
+    }
+
+    @Test
+    public void enabledDisabledAndUnknownTargets_disableByNotificationTargets_onlyEnabledUsersDisabled() {
+        // Given...
+        User enabled = new User(UserId.generate(), "enabled", UserState.ENABLED);
+        User alreadyDisabled = new User(UserId.generate(), "already-disabled", UserState.DISABLED);
+        User untouched = new User(UserId.generate(), "untouched", UserState.ENABLED);
+        userRepository.saveAll(Arrays.asList(enabled, alreadyDisabled, untouched));
+
+        // When...
+        List<UserId> disabled = userRepository.disableByNotificationTargets(Arrays.asList("enabled", "already-disabled", "unknown"));
+
+        // Then...
+        assertThat(disabled, containsInAnyOrder(enabled.getUserId()));
+        assertThat(userRepository.findByNotificationTarget("enabled").getUserState(), is(UserState.DISABLED));
+        assertThat(userRepository.findByNotificationTarget("untouched").getUserState(), is(UserState.ENABLED));
+    }
+
+    @Test
+    public void enabledAndDisabledUsers_findByUserStateIsAndLastHeartbeatIsNotNull_enabledHeartbeatsProjected() {
+        // Given...
+        LocalDateTime lastHeartbeat = LocalDateTime.of(2018, Month.MARCH, 1, 12, 0);
+        userRepository.saveAll(Arrays.asList(
+                new User(UserId.generate(), "enabled", UserState.ENABLED),
+                new User(UserId.generate(), "never", UserState.ENABLED),
+                new User(UserId.generate(), "disabled", UserState.DISABLED)));
+        userRepository.recordHeartbeats(Collections.singletonMap("enabled", lastHeartbeat));
+        userRepository.recordHeartbeats(Collections.singletonMap("disabled", lastHeartbeat));
+
+        // When...
+        List<UserHeartbeat> userHeartbeats = userRepository.findByUserStateIsAndLastHeartbeatIsNotNull(UserState.ENABLED)
+                .collect(Collectors.toList());
+
+        // Then...
+        assertThat(userHeartbeats, hasSize(1));
+        assertThat(userHeartbeats.get(0).getNotificationTarget(), is("enabled"));
+        assertThat(userHeartbeats.get(0).getLastHeartbeat(), is(lastHeartbeat));
+    }
 }
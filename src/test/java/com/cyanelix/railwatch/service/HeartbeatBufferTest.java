@@ -0,0 +1,170 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.repository.DailyUserActivityRepository;
+import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HeartbeatBufferTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private HeartbeatRepository heartbeatRepository;
+
+    @Mock
+    private DailyUserActivityRepository dailyUserActivityRepository;
+
+    private HeartbeatBuffer heartbeatBuffer;
+
+    @After
+    public void shutdown() {
+        heartbeatBuffer.shutdown();
+    }
+
+    @Test
+    public void repeatedHeartbeatsForDevice_flush_onlyLatestWritten() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, true);
+        heartbeatBuffer.record("foo", NOW.minusMinutes(1));
+        heartbeatBuffer.record("foo", NOW);
+        heartbeatBuffer.record("foo", NOW.minusMinutes(2));
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        Map<String, LocalDateTime> expected = Collections.singletonMap("foo", NOW);
+        verify(userRepository).recordHeartbeats(expected);
+        verify(heartbeatRepository).recordSamples(expected, Duration.ofHours(1));
+        assertThat(heartbeatBuffer.size(), is(0));
+    }
+
+    @Test
+    public void heartbeatsForSeveralDevices_flush_writtenInOneBatch() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, true);
+        heartbeatBuffer.record("foo", NOW);
+        heartbeatBuffer.record("bar", NOW.minusMinutes(1));
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        Map<String, LocalDateTime> expected = new HashMap<>();
+        expected.put("foo", NOW);
+        expected.put("bar", NOW.minusMinutes(1));
+        verify(userRepository).recordHeartbeats(expected);
+    }
+
+    @Test
+    public void emptyBuffer_flush_nothingWritten() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, true);
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        verifyZeroInteractions(userRepository, heartbeatRepository);
+    }
+
+    @Test
+    public void historyDisabled_flush_noSamplesWritten() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, false);
+        heartbeatBuffer.record("foo", NOW);
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        verify(userRepository).recordHeartbeats(Collections.singletonMap("foo", NOW));
+        verify(heartbeatRepository, never()).recordSamples(anyMapOf(String.class, LocalDateTime.class), any(Duration.class));
+    }
+
+    @Test
+    public void historyDisabled_flush_dailyActivityStillRecorded() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, false);
+        heartbeatBuffer.record("foo", NOW);
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        verify(dailyUserActivityRepository).recordHeartbeats(Collections.singletonMap("foo", NOW));
+    }
+
+    @Test
+    public void writeFails_flush_heartbeatsKeptForNextFlush() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, true);
+        heartbeatBuffer.record("foo", NOW);
+        given(userRepository.recordHeartbeats(anyMapOf(String.class, LocalDateTime.class)))
+                .willThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .willReturn(1);
+
+        // When...
+        heartbeatBuffer.flush();
+
+        // Then...
+        assertThat(heartbeatBuffer.size(), is(1));
+
+        heartbeatBuffer.flush();
+        verify(userRepository, times(2)).recordHeartbeats(Collections.singletonMap("foo", NOW));
+        assertThat(heartbeatBuffer.size(), is(0));
+    }
+
+    @Test
+    public void bufferReachesMaximumSize_record_flushedWithoutWaitingForTimer() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(2, true);
+        heartbeatBuffer.record("foo", NOW);
+
+        // When...
+        heartbeatBuffer.record("bar", NOW);
+
+        // Then...
+        verify(userRepository, timeout(5000L)).recordHeartbeats(anyMapOf(String.class, LocalDateTime.class));
+    }
+
+    @Test
+    public void pendingHeartbeats_shutdown_flushed() {
+        // Given...
+        heartbeatBuffer = createHeartbeatBuffer(100, true);
+        heartbeatBuffer.record("foo", NOW);
+
+        // When...
+        heartbeatBuffer.shutdown();
+
+        // Then...
+        verify(userRepository).recordHeartbeats(Collections.singletonMap("foo", NOW));
+    }
+
+    private HeartbeatBuffer createHeartbeatBuffer(int maximumSize, boolean historyEnabled) {
+        return new HeartbeatBuffer(userRepository, heartbeatRepository, dailyUserActivityRepository, new SimpleMeterRegistry(), maximumSize, historyEnabled, 3600000L);
+    }
+}
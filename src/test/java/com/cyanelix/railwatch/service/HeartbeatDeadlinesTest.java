@@ -0,0 +1,96 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInOrder.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class HeartbeatDeadlinesTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    private final HeartbeatDeadlines heartbeatDeadlines = new HeartbeatDeadlines(Duration.ofDays(7), Duration.ofDays(10));
+
+    @Test
+    public void heartbeatsForSeveralTargets_due_earliestFirstAndOnlyPastDeadlines() {
+        // Given...
+        heartbeatDeadlines.heartbeat("later", NOW.minusDays(8));
+        heartbeatDeadlines.heartbeat("earlier", NOW.minusDays(9));
+        heartbeatDeadlines.heartbeat("exact", NOW.minusDays(7));
+        heartbeatDeadlines.heartbeat("fresh", NOW);
+
+        // When...
+        List<String> due = targetsOf(heartbeatDeadlines.due(NOW));
+
+        // Then...
+        assertThat(due, contains("earlier", "later"));
+        assertThat(heartbeatDeadlines.next(), is(Optional.of(NOW.minusDays(2))));
+    }
+
+    @Test
+    public void newerHeartbeat_heartbeat_deadlineMovedLater() {
+        // Given...
+        heartbeatDeadlines.heartbeat("foo", NOW.minusDays(8));
+
+        // When...
+        heartbeatDeadlines.heartbeat("foo", NOW);
+        heartbeatDeadlines.heartbeat("foo", NOW.minusDays(9));
+
+        // Then...
+        assertThat(heartbeatDeadlines.due(NOW), is(empty()));
+        assertThat(heartbeatDeadlines.next(), is(Optional.of(NOW.plusDays(7))));
+        assertThat(heartbeatDeadlines.size(), is(1));
+    }
+
+    @Test
+    public void warnDeadline_warned_movedToDisableDeadline() {
+        // Given...
+        heartbeatDeadlines.heartbeat("foo", NOW.minusDays(8));
+        HeartbeatDeadlines.Deadline deadline = heartbeatDeadlines.due(NOW).get(0);
+
+        // When...
+        heartbeatDeadlines.warned(deadline);
+
+        // Then...
+        assertThat(heartbeatDeadlines.due(NOW), is(empty()));
+        assertThat(heartbeatDeadlines.next(), is(Optional.of(NOW.plusDays(2))));
+    }
+
+    @Test
+    public void heartbeatArrivesDuringEvaluation_removeStaleDeadline_newDeadlineKept() {
+        // Given...
+        heartbeatDeadlines.heartbeat("foo", NOW.minusDays(11));
+        HeartbeatDeadlines.Deadline deadline = heartbeatDeadlines.due(NOW).get(0);
+        heartbeatDeadlines.heartbeat("foo", NOW);
+
+        // When...
+        heartbeatDeadlines.remove(deadline);
+        heartbeatDeadlines.warned(deadline);
+
+        // Then...
+        assertThat(heartbeatDeadlines.size(), is(1));
+        assertThat(heartbeatDeadlines.next(), is(Optional.of(NOW.plusDays(7))));
+    }
+
+    @Test
+    public void heartbeatOlderThanWarnThreshold_restore_trackedAsAlreadyWarned() {
+        // When...
+        heartbeatDeadlines.restore("foo", NOW.minusDays(8), NOW);
+
+        // Then...
+        assertThat(heartbeatDeadlines.next(), is(Optional.of(NOW.plusDays(2))));
+        heartbeatDeadlines.due(NOW.plusDays(3)).forEach(deadline -> assertThat(deadline.getStatus(), is(HeartbeatStatus.DISABLE)));
+    }
+
+    private List<String> targetsOf(List<HeartbeatDeadlines.Deadline> deadlines) {
+        return deadlines.stream().map(HeartbeatDeadlines.Deadline::getNotificationTarget).collect(Collectors.toList());
+    }
+}
@@ -1,36 +1,52 @@
 package com.cyanelix.railwatch.service;
 
+import com.cyanelix.railwatch.domain.HeartbeatStatus;
 import com.cyanelix.railwatch.domain.NotificationTarget;
-import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
-import com.cyanelix.railwatch.entity.Heartbeat;
-import com.cyanelix.railwatch.entity.User;
-import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.entity.StaleHeartbeat;
+import com.cyanelix.railwatch.entity.UserHeartbeat;
+import com.cyanelix.railwatch.repository.UserRepository;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HeartbeatServiceTest {
+    private static final LocalDateTime WARN_BEFORE = LocalDateTime.of(2016, 12, 25, 12, 0);
+    private static final LocalDateTime DISABLE_BEFORE = LocalDateTime.of(2016, 12, 22, 12, 0);
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 1, 1, 12, 0);
+
+    @Mock
+    private UserRepository userRepository;
+
     @Mock
-    private HeartbeatRepository heartbeatRepository;
+    private HeartbeatBuffer heartbeatBuffer;
 
     @Mock
     private UserService userService;
@@ -41,90 +57,274 @@ public class HeartbeatServiceTest {
     @Mock
     private Clock clock;
 
-    @InjectMocks
     private HeartbeatService heartbeatService;
 
     @Before
-    public void setTestClock() {
+    public void setup() {
         given(clock.instant()).willReturn(Instant.parse("2017-01-01T12:00:00Z"));
         given(clock.getZone()).willReturn(ZoneId.of("Europe/London"));
+
+        heartbeatService = new HeartbeatService(userService, notificationService, userRepository, heartbeatBuffer, clock, false);
     }
 
-    @Test
-    public void givenADeviceId_saveIt() {
-        // Given...
-        NotificationTarget notificationTarget = NotificationTarget.of("notification-id");
+    @After
+    public void shutdown() {
+        heartbeatService.shutdown();
+    }
 
+    @Test
+    public void givenADeviceId_recordHeartbeat_bufferedWithCurrentTime() {
         // When...
-        heartbeatService.recordHeartbeat(notificationTarget);
+        heartbeatService.recordHeartbeat(NotificationTarget.of("notification-id"));
 
         // Then...
-        ArgumentCaptor<Heartbeat> heartbeatEntityArgumentCaptor = ArgumentCaptor.forClass(Heartbeat.class);
-        verify(heartbeatRepository).save(heartbeatEntityArgumentCaptor.capture());
+        verify(heartbeatBuffer).record("notification-id", NOW);
+    }
 
-        Heartbeat heartbeat = heartbeatEntityArgumentCaptor.getValue();
-        assertThat(heartbeat.getNotificationTarget(), is(notificationTarget));
-        assertThat(heartbeat.getDateTime(), is(LocalDateTime.of(2017, 1, 1, 12, 0, 0)));
+    @Test
+    public void bufferedHeartbeats_checkHeartbeats_flushedBeforeQuerying() {
+        // When...
+        heartbeatService.checkHeartbeats();
+
+        // Then...
+        InOrder inOrder = inOrder(heartbeatBuffer, userRepository);
+        inOrder.verify(heartbeatBuffer).flush();
+        inOrder.verify(userRepository).findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE);
     }
 
     @Test
-    public void givenAHeartbeatOneDayAgo_doNotDisable_doNotWarn() {
+    public void noStaleHeartbeats_doNotDisable_doNotWarn() {
         // Given...
-        NotificationTarget notificationTarget = NotificationTarget.of("foo");
-        User user = createUser(notificationTarget);
-        Heartbeat oneDayOldHeartbeat =
-                new Heartbeat(notificationTarget, LocalDateTime.of(2016, 12, 31, 12, 1));
-
-        given(userService.getEnabledUsers()).willReturn(Stream.of(user), Stream.of(user));
-        given(heartbeatRepository.findFirstByNotificationTargetEqualsOrderByDateTimeDesc(notificationTarget)).willReturn(oneDayOldHeartbeat);
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE)).willReturn(Collections.emptyList());
 
         // When...
         heartbeatService.checkHeartbeats();
 
         // Then...
-        verify(userService, never()).disableUserByNotificationTarget(any());
-        verify(notificationService, never()).sendNotification(any(NotificationTarget.class), any());
+        verify(userService).disableUsersByNotificationTargets(Collections.emptyList());
+        verify(notificationService).sendNotifications(Collections.emptyList(), "Open the RailWatch app to keep your train time notifications coming!");
     }
 
     @Test
     public void givenAHeartbeatSevenDaysAgo_doNotDisable_doWarn() {
         // Given...
         NotificationTarget notificationTarget = NotificationTarget.of("foo");
-        User user = createUser(notificationTarget);
-        Heartbeat sevenDayOldHeartbeat =
-                new Heartbeat(notificationTarget, LocalDateTime.of(2016, 12, 25, 11, 59));
-
-        given(userService.getEnabledUsers()).willReturn(Stream.of(user), Stream.of(user));
-        given(heartbeatRepository.findFirstByNotificationTargetEqualsOrderByDateTimeDesc(notificationTarget)).willReturn(sevenDayOldHeartbeat);
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE)).willReturn(Collections.singletonList(
+                new StaleHeartbeat("foo", LocalDateTime.of(2016, 12, 25, 11, 59), HeartbeatStatus.WARN)));
 
         // When...
         heartbeatService.checkHeartbeats();
 
         // Then...
-        verify(userService, never()).disableUserByNotificationTarget(any());
-        verify(notificationService).sendNotification(notificationTarget, "Open the RailWatch app to keep your train time notifications coming!");
+        verify(userService).disableUsersByNotificationTargets(Collections.emptyList());
+        verify(notificationService).sendNotifications(Collections.singletonList(notificationTarget), "Open the RailWatch app to keep your train time notifications coming!");
     }
 
     @Test
     public void givenAHeartbeatTenDaysAgo_doDisable_doNotWarn() {
         // Given...
         NotificationTarget notificationTarget = NotificationTarget.of("foo");
-        User user = createUser(notificationTarget);
-        Heartbeat overTenDaysAgoHeartbeat =
-                new Heartbeat(notificationTarget, LocalDateTime.of(2016, 12, 22, 11, 59));
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE)).willReturn(Collections.singletonList(
+                new StaleHeartbeat("foo", LocalDateTime.of(2016, 12, 22, 11, 59), HeartbeatStatus.DISABLE)));
+
+        // When...
+        heartbeatService.checkHeartbeats();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(Collections.singletonList(notificationTarget));
+        verify(notificationService).sendNotifications(Collections.emptyList(), "Open the RailWatch app to keep your train time notifications coming!");
+    }
 
-        given(userService.getEnabledUsers()).willReturn(Stream.of(user), Stream.empty());
-        given(heartbeatRepository.findFirstByNotificationTargetEqualsOrderByDateTimeDesc(notificationTarget)).willReturn(overTenDaysAgoHeartbeat);
+    @Test
+    public void staleHeartbeatsInBothBuckets_eachHandledOnce() {
+        // Given...
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE)).willReturn(Arrays.asList(
+                new StaleHeartbeat("expired", LocalDateTime.of(2016, 12, 1, 0, 0), HeartbeatStatus.DISABLE),
+                new StaleHeartbeat("warned", LocalDateTime.of(2016, 12, 24, 0, 0), HeartbeatStatus.WARN)));
 
         // When...
         heartbeatService.checkHeartbeats();
 
         // Then...
-        verify(userService).disableUserByNotificationTarget(notificationTarget);
-        verify(notificationService, never()).sendNotification(any(NotificationTarget.class), any());
+        verify(userService).disableUsersByNotificationTargets(Collections.singletonList(NotificationTarget.of("expired")));
+        verify(notificationService).sendNotifications(Collections.singletonList(NotificationTarget.of("warned")), "Open the RailWatch app to keep your train time notifications coming!");
+        verifyNoMoreInteractions(userService, notificationService);
+    }
+
+    @Test
+    public void manyStaleHeartbeats_checkHeartbeats_handledInOneCallPerAction() {
+        // Given...
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE)).willReturn(Arrays.asList(
+                new StaleHeartbeat("expired-1", LocalDateTime.of(2016, 12, 1, 0, 0), HeartbeatStatus.DISABLE),
+                new StaleHeartbeat("warned-1", LocalDateTime.of(2016, 12, 24, 0, 0), HeartbeatStatus.WARN),
+                new StaleHeartbeat("expired-2", LocalDateTime.of(2016, 12, 2, 0, 0), HeartbeatStatus.DISABLE),
+                new StaleHeartbeat("warned-2", LocalDateTime.of(2016, 12, 23, 0, 0), HeartbeatStatus.WARN)));
+
+        // When...
+        heartbeatService.checkHeartbeats();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(Arrays.asList(NotificationTarget.of("expired-1"), NotificationTarget.of("expired-2")));
+        verify(notificationService).sendNotifications(Arrays.asList(NotificationTarget.of("warned-1"), NotificationTarget.of("warned-2")), "Open the RailWatch app to keep your train time notifications coming!");
+        verifyNoMoreInteractions(userService, notificationService);
+    }
+
+    @Test
+    public void fullCheckMode_scheduledCheckHeartbeats_evaluatesEveryUser() {
+        // When...
+        heartbeatService.scheduledCheckHeartbeats();
+
+        // Then...
+        verify(userRepository).findStaleHeartbeatsOfEnabledUsers(WARN_BEFORE, DISABLE_BEFORE);
+    }
+
+    @Test
+    public void incrementalMode_scheduledCheckHeartbeats_noFullScan() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+
+        // When...
+        heartbeatService.scheduledCheckHeartbeats();
+
+        // Then...
+        verifyZeroInteractions(userRepository, heartbeatBuffer);
+    }
+
+    @Test
+    public void incrementalMode_recordHeartbeat_deadlineAtWarnThreshold() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+
+        // When...
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+
+        // Then...
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.of(NOW.plusDays(7))));
+    }
+
+    @Test
+    public void enabledUsersWithHeartbeats_load_deadlinesRestoredWithoutRewarning() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        given(userRepository.findByUserStateIsAndLastHeartbeatIsNotNull(UserState.ENABLED)).willReturn(Stream.of(
+                new UserHeartbeat("recent", NOW.minusDays(1)),
+                new UserHeartbeat("warned", NOW.minusDays(8))));
+
+        // When...
+        heartbeatService.load();
+
+        // Then...
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.of(NOW.minusDays(8).plusDays(10))));
+        verifyZeroInteractions(notificationService, userService);
+    }
+
+    @Test
+    public void warnThresholdCrossed_evaluateDeadlines_warnedOnceAndDisableDeadlineSet() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+        LocalDateTime later = advanceClock(Duration.ofDays(7).plusMinutes(1));
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(Collections.singletonList("foo"), later.minusDays(7), later.minusDays(10)))
+                .willReturn(Collections.singletonList(new StaleHeartbeat("foo", NOW, HeartbeatStatus.WARN)));
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        verify(notificationService).sendNotifications(Collections.singletonList(NotificationTarget.of("foo")), "Open the RailWatch app to keep your train time notifications coming!");
+        verify(userService).disableUsersByNotificationTargets(Collections.emptyList());
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.of(NOW.plusDays(10))));
+    }
+
+    @Test
+    public void deadlineDue_evaluateDeadlines_bufferFlushedBeforeQuery() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+        LocalDateTime later = advanceClock(Duration.ofDays(7).plusMinutes(1));
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        InOrder inOrder = inOrder(heartbeatBuffer, userRepository);
+        inOrder.verify(heartbeatBuffer).flush();
+        inOrder.verify(userRepository).findStaleHeartbeatsOfEnabledUsers(Collections.singletonList("foo"), later.minusDays(7), later.minusDays(10));
+    }
+
+    @Test
+    public void disableThresholdCrossed_evaluateDeadlines_userDisabledAndNoLongerTracked() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+        LocalDateTime later = advanceClock(Duration.ofDays(10).plusMinutes(1));
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(Collections.singletonList("foo"), later.minusDays(7), later.minusDays(10)))
+                .willReturn(Collections.singletonList(new StaleHeartbeat("foo", NOW, HeartbeatStatus.DISABLE)));
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(Collections.singletonList(NotificationTarget.of("foo")));
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.empty()));
+    }
+
+    @Test
+    public void dueUserNoLongerEnabled_evaluateDeadlines_droppedWithoutAction() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+        advanceClock(Duration.ofDays(7).plusMinutes(1));
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(anyListOf(String.class), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .willReturn(Collections.emptyList());
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(Collections.emptyList());
+        verify(notificationService).sendNotifications(Collections.emptyList(), "Open the RailWatch app to keep your train time notifications coming!");
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.empty()));
+    }
+
+    @Test
+    public void nothingDue_evaluateDeadlines_repositoryNotQueried() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        verify(userRepository, never()).findStaleHeartbeatsOfEnabledUsers(anyListOf(String.class), any(LocalDateTime.class), any(LocalDateTime.class));
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.of(NOW.plusDays(7))));
+    }
+
+    @Test
+    public void repositoryUnavailable_evaluateDeadlines_deadlineKeptForRetry() {
+        // Given...
+        heartbeatService = createIncrementalHeartbeatService();
+        heartbeatService.recordHeartbeat(NotificationTarget.of("foo"));
+        advanceClock(Duration.ofDays(7).plusMinutes(1));
+        given(userRepository.findStaleHeartbeatsOfEnabledUsers(anyListOf(String.class), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .willThrow(new DataAccessResourceFailureException("Mongo unavailable"));
+
+        // When...
+        heartbeatService.evaluateDeadlines();
+
+        // Then...
+        verifyZeroInteractions(notificationService, userService);
+        assertThat(heartbeatService.getNextDeadline(), is(Optional.of(NOW.plusDays(7))));
+    }
+
+    private HeartbeatService createIncrementalHeartbeatService() {
+        heartbeatService.shutdown();
+        return new HeartbeatService(userService, notificationService, userRepository, heartbeatBuffer, clock, true);
     }
 
-    private User createUser(NotificationTarget notificationTarget) {
-        return new User(UserId.generate(), notificationTarget.getTargetAddress(), UserState.ENABLED);
+    private LocalDateTime advanceClock(Duration duration) {
+        given(clock.instant()).willReturn(Instant.parse("2017-01-01T12:00:00Z").plus(duration));
+        return NOW.plus(duration);
     }
 }
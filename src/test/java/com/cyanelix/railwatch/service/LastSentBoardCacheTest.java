@@ -0,0 +1,111 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.Journey;
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.domain.Station;
+import com.cyanelix.railwatch.entity.SentBoard;
+import com.cyanelix.railwatch.entity.SentNotification;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import com.cyanelix.railwatch.service.LastSentBoardCache.LastSentBoard;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LastSentBoardCacheTest {
+    private static final Journey FOO_TO_BAR = Journey.of(Station.of("FOO"), Station.of("BAR"));
+    private static final NotificationTarget TARGET = NotificationTarget.of("target");
+
+    @Mock
+    private SentNotificationRepository sentNotificationRepository;
+
+    private Clock clock;
+
+    @Before
+    public void setup() {
+        clock = Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.of("UTC"));
+    }
+
+    @Test
+    public void fingerprintPut_get_fingerprintReturned() {
+        // Given...
+        LastSentBoardCache cache = new LastSentBoardCache(sentNotificationRepository, clock, 10);
+        cache.put(TARGET, FOO_TO_BAR, "hash");
+
+        // When...
+        String fingerprint = cache.get(TARGET, FOO_TO_BAR).getFingerprint();
+
+        // Then...
+        assertThat(fingerprint, is("hash"));
+    }
+
+    @Test
+    public void fingerprintPutYesterday_get_missReturned() {
+        // Given...
+        MutableClock mutableClock = new MutableClock(Instant.parse("2017-01-01T23:59:00Z"), ZoneId.of("UTC"));
+        LastSentBoardCache cache = new LastSentBoardCache(sentNotificationRepository, mutableClock, 10);
+        cache.put(TARGET, FOO_TO_BAR, "hash");
+        mutableClock.advance(Duration.ofMinutes(2));
+
+        // When...
+        LastSentBoard lastSentBoard = cache.get(TARGET, FOO_TO_BAR);
+
+        // Then...
+        assertThat(lastSentBoard, is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void cacheFull_put_leastRecentlyUsedEvicted() {
+        // Given...
+        Journey bazToQux = Journey.of(Station.of("BAZ"), Station.of("QUX"));
+        Journey quxToFoo = Journey.of(Station.of("QUX"), Station.of("FOO"));
+
+        LastSentBoardCache cache = new LastSentBoardCache(sentNotificationRepository, clock, 2);
+        cache.put(TARGET, FOO_TO_BAR, "hash1");
+        cache.put(TARGET, bazToQux, "hash2");
+        cache.get(TARGET, FOO_TO_BAR);
+
+        // When...
+        cache.put(TARGET, quxToFoo, "hash3");
+
+        // Then...
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(TARGET, FOO_TO_BAR).getFingerprint(), is("hash1"));
+        assertThat(cache.get(TARGET, bazToQux), is(nullValue()));
+    }
+
+    @Test
+    public void notificationsSentToday_warm_latestFingerprintPerJourneyLoaded() {
+        // Given...
+        NotificationRequest earlier = new NotificationRequest(TARGET, "RailWatch", "earlier");
+        NotificationRequest later = new NotificationRequest(TARGET, "RailWatch", "later");
+
+        given(sentNotificationRepository.findBySentDateTimeAfterAndJourneyIsNotNull(LocalDateTime.of(2017, 1, 1, 0, 0))).willReturn(Arrays.asList(
+                new SentBoard(TARGET.getTargetAddress(), FOO_TO_BAR.toString(), SentNotification.contentHashOf(later), LocalDateTime.of(2017, 1, 1, 9, 0)),
+                new SentBoard(TARGET.getTargetAddress(), FOO_TO_BAR.toString(), SentNotification.contentHashOf(earlier), LocalDateTime.of(2017, 1, 1, 8, 0))));
+
+        LastSentBoardCache cache = new LastSentBoardCache(sentNotificationRepository, clock, 10);
+
+        // When...
+        cache.warm();
+
+        // Then...
+        assertThat(cache.get(TARGET, FOO_TO_BAR).getFingerprint(), is(SentNotification.contentHashOf(later)));
+    }
+}
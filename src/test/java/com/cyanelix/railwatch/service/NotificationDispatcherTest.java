@@ -0,0 +1,190 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.firebase.client.FirebaseClient;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationDispatcherTest {
+    private static final NotificationRequest REQUEST = new NotificationRequest(NotificationTarget.of("target"), "RailWatch", "body");
+    private static final NotificationResult SENT = new NotificationResult("1:0408", null);
+
+    @Mock
+    private FirebaseClient firebaseClient;
+
+    private MeterRegistry meterRegistry;
+
+    private NotificationDispatcher notificationDispatcher;
+
+    @Before
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        notificationDispatcher = new NotificationDispatcher(firebaseClient, meterRegistry, 1, 10, 3, 1L);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        notificationDispatcher.shutdown();
+    }
+
+    @Test
+    public void successfulSend_dispatch_completesWithTrue() throws Exception {
+        // Given...
+        given(firebaseClient.send(REQUEST)).willReturn(SENT);
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(REQUEST).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        assertThat(meterRegistry.timer("railwatch.notifications.send").count(), is(1L));
+    }
+
+    @Test
+    public void unexpectedException_dispatch_completesAsFailureWithoutRetry() throws Exception {
+        // Given...
+        given(firebaseClient.send(REQUEST)).willThrow(new IllegalStateException("Unreadable response"));
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(REQUEST).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(result.isSuccess(), is(false));
+        verify(firebaseClient, times(1)).send(REQUEST);
+        assertThat(meterRegistry.counter("railwatch.notifications.failures").count(), is(1.0));
+    }
+
+    @Test
+    public void transientFailureThenSuccess_dispatch_retriedAndCompletesWithTrue() throws Exception {
+        // Given...
+        given(firebaseClient.send(REQUEST))
+                .willThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .willReturn(SENT);
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(REQUEST).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(result.isSuccess(), is(true));
+        verify(firebaseClient, times(2)).send(REQUEST);
+        assertThat(meterRegistry.counter("railwatch.notifications.retries").count(), is(1.0));
+    }
+
+    @Test
+    public void transientFailureEveryAttempt_dispatch_givesUpAfterMaxAttempts() throws Exception {
+        // Given...
+        given(firebaseClient.send(REQUEST)).willThrow(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(REQUEST).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(result.isSuccess(), is(false));
+        verify(firebaseClient, times(3)).send(REQUEST);
+        assertThat(meterRegistry.counter("railwatch.notifications.failures").count(), is(1.0));
+    }
+
+    @Test
+    public void permanentFailure_dispatch_notRetried() throws Exception {
+        // Given...
+        given(firebaseClient.send(REQUEST)).willThrow(new HttpClientErrorException(HttpStatus.UNAUTHORIZED));
+
+        // When...
+        NotificationResult result = notificationDispatcher.dispatch(REQUEST).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(result.isSuccess(), is(false));
+        verify(firebaseClient, times(1)).send(REQUEST);
+    }
+
+    @Test
+    public void multicast_dispatchMulticast_completesWithPerRecipientResults() throws Exception {
+        // Given...
+        List<NotificationTarget> targets = Arrays.asList(NotificationTarget.of("a"), NotificationTarget.of("b"));
+        Map<NotificationTarget, NotificationResult> results = Collections.singletonMap(NotificationTarget.of("a"), new NotificationResult("1", null));
+        given(firebaseClient.sendMulticast(REQUEST, targets)).willReturn(results);
+
+        // When...
+        Map<NotificationTarget, NotificationResult> outcome = notificationDispatcher.dispatchMulticast(REQUEST, targets).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(outcome, is(results));
+    }
+
+    @Test
+    public void multicastPermanentFailure_dispatchMulticast_completesWithNoResults() throws Exception {
+        // Given...
+        List<NotificationTarget> targets = Arrays.asList(NotificationTarget.of("a"), NotificationTarget.of("b"));
+        given(firebaseClient.sendMulticast(REQUEST, targets)).willThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+
+        // When...
+        Map<NotificationTarget, NotificationResult> outcome = notificationDispatcher.dispatchMulticast(REQUEST, targets).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        assertThat(outcome.isEmpty(), is(true));
+    }
+
+    @Test
+    public void transientFailureOfOneBatch_dispatchMulticast_onlyThatBatchRetried() throws Exception {
+        // Given...
+        List<NotificationTarget> targets = IntStream.range(0, FirebaseClient.MAX_BATCH_SIZE + 1)
+                .mapToObj(i -> NotificationTarget.of("target-" + i))
+                .collect(Collectors.toList());
+        List<NotificationTarget> firstBatch = targets.subList(0, FirebaseClient.MAX_BATCH_SIZE);
+        List<NotificationTarget> secondBatch = targets.subList(FirebaseClient.MAX_BATCH_SIZE, targets.size());
+        given(firebaseClient.sendMulticast(REQUEST, firstBatch)).willReturn(Collections.singletonMap(targets.get(0), SENT));
+        given(firebaseClient.sendMulticast(REQUEST, secondBatch))
+                .willThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .willReturn(Collections.singletonMap(targets.get(FirebaseClient.MAX_BATCH_SIZE), SENT));
+
+        // When...
+        Map<NotificationTarget, NotificationResult> outcome = notificationDispatcher.dispatchMulticast(REQUEST, targets).get(1L, TimeUnit.SECONDS);
+
+        // Then...
+        verify(firebaseClient, times(1)).sendMulticast(REQUEST, firstBatch);
+        verify(firebaseClient, times(2)).sendMulticast(REQUEST, secondBatch);
+        assertThat(outcome.keySet(), containsInAnyOrder(targets.get(0), targets.get(FirebaseClient.MAX_BATCH_SIZE)));
+    }
+
+    @Test
+    public void thirdAttempt_backoffMillis_withinJitteredBounds() {
+        // Given...
+        NotificationDispatcher dispatcher = new NotificationDispatcher(firebaseClient, meterRegistry, 1, 10, 5, 100L);
+
+        // When...
+        long backoff = dispatcher.backoffMillis(3);
+
+        // Then...
+        assertThat(backoff, is(greaterThanOrEqualTo(200L)));
+        assertThat(backoff, is(lessThanOrEqualTo(400L)));
+    }
+}
@@ -0,0 +1,246 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.NotificationTarget;
+import com.cyanelix.railwatch.entity.OutboxNotification;
+import com.cyanelix.railwatch.entity.SentNotification;
+import com.cyanelix.railwatch.firebase.client.entity.NotificationResult;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationOutboxRelayTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 1, 1, 10, 30);
+    private static final NotificationResult SENT = new NotificationResult("1:0408", null);
+
+    @Mock
+    private OutboxNotificationRepository outboxNotificationRepository;
+
+    @Mock
+    private SentNotificationRepository sentNotificationRepository;
+
+    @Mock
+    private NotificationDispatcher notificationDispatcher;
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private LastSentBoardCache lastSentBoardCache;
+
+    private NotificationOutboxRelay notificationOutboxRelay;
+
+    @Before
+    public void setup() {
+        Clock clock = Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.of("UTC"));
+        notificationOutboxRelay = new NotificationOutboxRelay(outboxNotificationRepository, sentNotificationRepository,
+                notificationDispatcher, userService, lastSentBoardCache, clock, 2, 60000L, 3);
+    }
+
+    @Test
+    public void emptyOutbox_relay_nothingDispatched() {
+        // Given...
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any())).willReturn(Collections.emptyList());
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(notificationDispatcher, never()).dispatch(any());
+    }
+
+    @Test
+    public void claimedNotificationsSent_relay_sentNotificationsSavedAndMarkedSentInBulk() {
+        // Given...
+        OutboxNotification first = createOutboxNotification("1", "first", 1);
+        given(outboxNotificationRepository.claimBatch(anyString(), eq(2), eq(NOW), eq(NOW.minusMinutes(1))))
+                .willReturn(Collections.singletonList(first));
+        given(notificationDispatcher.dispatch(first.toNotificationRequest())).willReturn(CompletableFuture.completedFuture(SENT));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        ArgumentCaptor<List<SentNotification>> sentNotificationsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(sentNotificationRepository).saveAll(sentNotificationsCaptor.capture());
+        assertThat(sentNotificationsCaptor.getValue().get(0).getBody(), is("first"));
+        assertThat(sentNotificationsCaptor.getValue().get(0).getJourney(), is("FOO -> BAR"));
+        String owner = claimOwner();
+        verify(outboxNotificationRepository).markSent(owner, Collections.singletonList("1"), NOW);
+        verify(lastSentBoardCache).put(first);
+    }
+
+    @Test
+    public void failedNotifications_relay_releasedForRetryOrFailedAfterMaxAttempts() {
+        // Given...
+        OutboxNotification retryable = createOutboxNotification("1", "retryable", 1);
+        OutboxNotification exhausted = createOutboxNotification("2", "exhausted", 3);
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Arrays.asList(retryable, exhausted), Collections.emptyList());
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(new NotificationResult(null, "Unavailable")));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(sentNotificationRepository, never()).saveAll(any());
+        String owner = claimOwner();
+        verify(outboxNotificationRepository).release(owner, Collections.singletonList("1"));
+        verify(outboxNotificationRepository).markFailed(owner, Collections.singletonList("2"), NOW);
+        verify(lastSentBoardCache, never()).put(any(OutboxNotification.class));
+        verify(lastSentBoardCache, never()).failed(retryable);
+        verify(lastSentBoardCache).failed(exhausted);
+    }
+
+    @Test
+    public void fullBatchClaimed_relay_claimsAgainUntilDrained() {
+        // Given...
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Arrays.asList(createOutboxNotification("1", "one", 1), createOutboxNotification("2", "two", 1)),
+                        Collections.singletonList(createOutboxNotification("3", "three", 1)));
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(SENT));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(outboxNotificationRepository, times(2)).claimBatch(anyString(), anyInt(), any(), any());
+        verify(notificationDispatcher, times(3)).dispatch(any());
+    }
+
+    @Test
+    public void identicalPayloadsForSeveralTargets_relay_sentAsOneMulticastWithPerRecipientOutcomes() {
+        // Given...
+        OutboxNotification delivered = createOutboxNotification("1", "board", 1, "target-1");
+        OutboxNotification undelivered = createOutboxNotification("2", "board", 1, "target-2");
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Arrays.asList(delivered, undelivered), Collections.emptyList());
+
+        Map<NotificationTarget, NotificationResult> multicastResults = new HashMap<>();
+        multicastResults.put(NotificationTarget.of("target-1"), new NotificationResult("1:0408", null));
+        multicastResults.put(NotificationTarget.of("target-2"), new NotificationResult(null, "Unavailable"));
+        given(notificationDispatcher.dispatchMulticast(any(), any())).willReturn(CompletableFuture.completedFuture(multicastResults));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(notificationDispatcher).dispatchMulticast(delivered.toNotificationRequest(),
+                Arrays.asList(NotificationTarget.of("target-1"), NotificationTarget.of("target-2")));
+        verify(notificationDispatcher, never()).dispatch(any());
+        String owner = claimOwner();
+        verify(outboxNotificationRepository).markSent(owner, Collections.singletonList("1"), NOW);
+        verify(outboxNotificationRepository).release(owner, Collections.singletonList("2"));
+    }
+
+    @Test
+    public void identicalPayloadsForTopics_relay_sentIndividually() {
+        // Given...
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Arrays.asList(createOutboxNotification("1", "board", 1, "/topics/one"),
+                        createOutboxNotification("2", "board", 1, "/topics/two")), Collections.emptyList());
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(SENT));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(notificationDispatcher, times(2)).dispatch(any());
+        verify(notificationDispatcher, never()).dispatchMulticast(any(), any());
+    }
+
+    @Test
+    public void targetNoLongerRegistered_relay_userDisabledAndNotificationNotRetried() {
+        // Given...
+        OutboxNotification unregistered = createOutboxNotification("1", "board", 1);
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Collections.singletonList(unregistered));
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(new NotificationResult(null, "NotRegistered")));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(Collections.singleton(NotificationTarget.of("notification-to")));
+        String owner = claimOwner();
+        verify(outboxNotificationRepository).markFailed(owner, Collections.singletonList("1"), NOW);
+        verify(outboxNotificationRepository).release(owner, Collections.emptyList());
+    }
+
+    @Test
+    public void severalTargetsNoLongerRegistered_relay_usersDisabledInOneCall() {
+        // Given...
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Arrays.asList(createOutboxNotification("1", "one", 1, "target-1"),
+                        createOutboxNotification("2", "two", 1, "target-2")), Collections.emptyList());
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(new NotificationResult(null, "NotRegistered")));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(userService).disableUsersByNotificationTargets(new HashSet<>(Arrays.asList(NotificationTarget.of("target-1"), NotificationTarget.of("target-2"))));
+        verify(userService, never()).disableUserByNotificationTarget(any());
+    }
+
+    @Test
+    public void transientFailure_relay_userNotDisabled() {
+        // Given...
+        given(outboxNotificationRepository.claimBatch(anyString(), anyInt(), any(), any()))
+                .willReturn(Collections.singletonList(createOutboxNotification("1", "board", 1)));
+        given(notificationDispatcher.dispatch(any())).willReturn(CompletableFuture.completedFuture(new NotificationResult(null, "Unavailable")));
+
+        // When...
+        notificationOutboxRelay.relay();
+
+        // Then...
+        verify(userService, never()).disableUsersByNotificationTargets(any());
+    }
+
+    private String claimOwner() {
+        ArgumentCaptor<String> ownerCaptor = ArgumentCaptor.forClass(String.class);
+        verify(outboxNotificationRepository, atLeastOnce()).claimBatch(ownerCaptor.capture(), anyInt(), any(), any());
+        return ownerCaptor.getValue();
+    }
+
+    private OutboxNotification createOutboxNotification(String id, String body, int attempts) {
+        return createOutboxNotification(id, body, attempts, "notification-to");
+    }
+
+    private OutboxNotification createOutboxNotification(String id, String body, int attempts, String to) {
+        OutboxNotification outboxNotification = new OutboxNotification(to, "RailWatch", body, "FOO -> BAR", "hash-" + id, NOW);
+        ReflectionTestUtils.setField(outboxNotification, "id", id);
+        ReflectionTestUtils.setField(outboxNotification, "attempts", attempts);
+        return outboxNotification;
+    }
+}
@@ -1,11 +1,12 @@
 package com.cyanelix.railwatch.service;
 
 import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.OutboxNotification;
 import com.cyanelix.railwatch.entity.Schedule;
 import com.cyanelix.railwatch.entity.SentNotification;
 import com.cyanelix.railwatch.entity.User;
-import com.cyanelix.railwatch.firebase.client.FirebaseClient;
 import com.cyanelix.railwatch.firebase.client.entity.NotificationRequest;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
 import com.cyanelix.railwatch.repository.SentNotificationRepository;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,9 +16,12 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -30,23 +34,29 @@ import static org.mockito.Mockito.*;
 @RunWith(MockitoJUnitRunner.class)
 public class NotificationServiceTest {
     @Mock
-    private FirebaseClient firebaseClient;
+    private OutboxNotificationRepository outboxNotificationRepository;
 
     @Mock
     private SentNotificationRepository sentNotificationRepository;
 
+    @Mock
+    private TopicSubscriptionService topicSubscriptionService;
+
+    private LastSentBoardCache lastSentBoardCache;
+
     private NotificationService notificationService;
 
     @Before
     public void setup() {
-        notificationService = new NotificationService(firebaseClient, sentNotificationRepository, Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.systemDefault()));
+        Clock clock = Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.systemDefault());
+        lastSentBoardCache = new LastSentBoardCache(sentNotificationRepository, clock, 100);
+        notificationService = new NotificationService(outboxNotificationRepository, sentNotificationRepository,
+                lastSentBoardCache, topicSubscriptionService, clock);
     }
 
     @Test
     public void singleUniqueTrainTime_sendNotification() {
         // Given...
-        given(sentNotificationRepository.findBySentDateTimeAfter(any())).willReturn(Collections.emptyList());
-
         User user = createUser();
         Schedule schedule = new Schedule(
                 LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
@@ -60,10 +70,10 @@ public class NotificationServiceTest {
         notificationService.sendNotification(schedule, trainTimes);
 
         // Then...
-        ArgumentCaptor<NotificationRequest> notificationRequestCaptor = ArgumentCaptor.forClass(NotificationRequest.class);
-        verify(firebaseClient).sendNotification(notificationRequestCaptor.capture());
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(outboxNotificationCaptor.capture());
 
-        NotificationRequest notificationRequest = notificationRequestCaptor.getValue();
+        NotificationRequest notificationRequest = outboxNotificationCaptor.getValue().toNotificationRequest();
         assertThat(notificationRequest.getTo(), is("notification-to"));
         assertThat(notificationRequest.getNotification().getTitle(), is("RailWatch"));
         assertThat(notificationRequest.getNotification().getBody(), is("FOO -> BAR @ 12:00"));
@@ -82,13 +92,14 @@ public class NotificationServiceTest {
                         .build());
 
         SentNotification sentNotification = new SentNotification("notification-to", "RailWatch", "FOO -> BAR @ 12:00", "high", null);
-        given(sentNotificationRepository.findBySentDateTimeAfter(any())).willReturn(Collections.singletonList(sentNotification));
+        given(sentNotificationRepository.existsByToAndDayAndContentHash("notification-to", LocalDate.of(2017, 1, 1), sentNotification.getContentHash()))
+                .willReturn(true);
 
         // When...
         notificationService.sendNotification(schedule, trainTimes);
 
         // Then...
-        verify(firebaseClient, never()).sendNotification(any());
+        verify(outboxNotificationRepository, never()).save(any(OutboxNotification.class));
     }
 
     @Test
@@ -103,14 +114,206 @@ public class NotificationServiceTest {
                         .withExpectedDepartureTime(LocalTime.NOON)
                         .build());
 
-        SentNotification sentNotification = new SentNotification("notification-to", "RailWatch", "Different message body", "high", null);
-        given(sentNotificationRepository.findBySentDateTimeAfter(any())).willReturn(Collections.singletonList(sentNotification));
+        // When...
+        notificationService.sendNotification(schedule, trainTimes);
+
+        // Then...
+        verify(outboxNotificationRepository, times(1)).save(any(OutboxNotification.class));
+    }
+
+    @Test
+    public void identicalOnTimeBoardsOnConsecutiveDays_sendNotification_fullBoardSentEachDay() {
+        // Given...
+        MutableClock clock = new MutableClock(Instant.parse("2017-01-02T09:30:00Z"), ZoneId.of("UTC"));
+        notificationService = new NotificationService(outboxNotificationRepository, sentNotificationRepository,
+                new LastSentBoardCache(sentNotificationRepository, clock, 100), topicSubscriptionService, clock);
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, createUser());
+        List<TrainTime> trainTimes = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.of(9, 45))
+                        .withExpectedDepartureTime(LocalTime.of(9, 45))
+                        .build());
+        notificationService.sendNotification(schedule, trainTimes);
+        clock.advance(Duration.ofDays(1));
+
+        // When...
+        notificationService.sendNotification(schedule, trainTimes);
+
+        // Then...
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository, times(2)).save(outboxNotificationCaptor.capture());
+        assertThat(outboxNotificationCaptor.getAllValues().get(1).toNotificationRequest().getNotification().getBody(), is("FOO -> BAR @ 09:45"));
+        verify(sentNotificationRepository).existsByToAndDayAndContentHash(any(), eq(LocalDate.of(2017, 1, 3)), any());
+    }
+
+    @Test
+    public void boardSentInEarlierWindow_sendNotificationInLaterWindow_fullBoardSent() {
+        // Given...
+        User user = createUser();
+        Schedule morning = new Schedule(
+                LocalTime.of(7, 0), LocalTime.of(9, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        Schedule evening = new Schedule(
+                LocalTime.of(10, 0), LocalTime.of(11, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        TrainTime onTime = new TrainTime.Builder(LocalTime.NOON)
+                .withExpectedDepartureTime(LocalTime.NOON)
+                .build();
+        TrainTime laterOnTime = new TrainTime.Builder(LocalTime.of(12, 30))
+                .withExpectedDepartureTime(LocalTime.of(12, 30))
+                .build();
+        notificationService.sendNotification(morning, Collections.singletonList(onTime));
+
+        // When...
+        notificationService.sendNotification(evening, Arrays.asList(onTime, laterOnTime));
+
+        // Then...
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository, times(2)).save(outboxNotificationCaptor.capture());
+        assertThat(outboxNotificationCaptor.getAllValues().get(1).toNotificationRequest().getNotification().getBody(),
+                is("FOO -> BAR @ 12:00\nFOO -> BAR @ 12:30"));
+    }
+
+    @Test
+    public void notificationSentSuccessfully_sendSameNotificationAgain_notSentOrLookedUp() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        List<TrainTime> trainTimes = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON)
+                        .withExpectedDepartureTime(LocalTime.NOON)
+                        .build());
+
+        notificationService.sendNotification(schedule, trainTimes);
+
+        // When...
+        notificationService.sendNotification(schedule, trainTimes);
+
+        // Then...
+        verify(outboxNotificationRepository, times(1)).save(any(OutboxNotification.class));
+        verify(sentNotificationRepository, times(1)).existsByToAndDayAndContentHash(any(), any(), any());
+    }
+
+    @Test
+    public void notificationSentSuccessfully_sendDifferentNotification_sentWithoutLookup() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+
+        notificationService.sendNotification(schedule, Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON)
+                        .withExpectedDepartureTime(LocalTime.NOON)
+                        .build()));
+        deliverQueuedNotification(1);
+
+        // When...
+        notificationService.sendNotification(schedule, Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON)
+                        .withExpectedDepartureTime(LocalTime.of(12, 5))
+                        .build()));
+
+        // Then...
+        verify(outboxNotificationRepository, times(2)).save(any(OutboxNotification.class));
+        verify(sentNotificationRepository, times(1)).existsByToAndDayAndContentHash(any(), any(), any());
+    }
+
+    @Test
+    public void boardPreviouslySent_oneTrainDelayed_onlyChangedTrainSent() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+
+        notificationService.sendNotification(schedule, Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.NOON).build(),
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 30)).build()));
+        deliverQueuedNotification(1);
+
+        // When...
+        notificationService.sendNotification(schedule, Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.NOON).build(),
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 40)).build()));
+
+        // Then...
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository, times(2)).save(outboxNotificationCaptor.capture());
+
+        assertThat(outboxNotificationCaptor.getValue().getBody(), is("FOO -> BAR @ 12:30 -> 12:40 (delayed)"));
+    }
+
+    @Test
+    public void boardPreviouslySent_onlyInsignificantChanges_notSent() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+
+        notificationService.sendNotification(schedule, Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.NOON).build(),
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 30)).build()));
+        deliverQueuedNotification(1);
+
+        // When...
+        notificationService.sendNotification(schedule, Collections.singletonList(
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 30)).build()));
+
+        // Then...
+        verify(outboxNotificationRepository, times(1)).save(any(OutboxNotification.class));
+    }
+
+    @Test
+    public void boardQueuedButNotDelivered_oneTrainDelayed_fullBoardSent() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+
+        notificationService.sendNotification(schedule, Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.NOON).build(),
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 30)).build()));
+
+        // When...
+        notificationService.sendNotification(schedule, Arrays.asList(
+                new TrainTime.Builder(LocalTime.NOON).withExpectedDepartureTime(LocalTime.NOON).build(),
+                new TrainTime.Builder(LocalTime.of(12, 30)).withExpectedDepartureTime(LocalTime.of(12, 40)).build()));
+
+        // Then...
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository, times(2)).save(outboxNotificationCaptor.capture());
+
+        assertThat(outboxNotificationCaptor.getValue().getBody(), is("FOO -> BAR @ 12:00\nFOO -> BAR @ 12:30 -> 12:40"));
+    }
+
+    @Test
+    public void boardDeliveryFailed_sendSameNotificationAgain_queuedAgain() {
+        // Given...
+        User user = createUser();
+        Schedule schedule = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+        List<TrainTime> trainTimes = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON)
+                        .withExpectedDepartureTime(LocalTime.NOON)
+                        .build());
+
+        notificationService.sendNotification(schedule, trainTimes);
+        ArgumentCaptor<OutboxNotification> failedCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(failedCaptor.capture());
+        lastSentBoardCache.failed(failedCaptor.getValue());
 
         // When...
         notificationService.sendNotification(schedule, trainTimes);
 
         // Then...
-        verify(firebaseClient, times(1)).sendNotification(any());
+        verify(outboxNotificationRepository, times(2)).save(any(OutboxNotification.class));
     }
 
     @Test
@@ -122,20 +325,45 @@ public class NotificationServiceTest {
         notificationService.sendNotification(notificationTarget, "A message");
 
         // Then...
-        ArgumentCaptor<NotificationRequest> notificationRequestCaptor = ArgumentCaptor.forClass(NotificationRequest.class);
-        verify(firebaseClient).sendNotification(notificationRequestCaptor.capture());
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(outboxNotificationCaptor.capture());
 
-        NotificationRequest notificationRequest = notificationRequestCaptor.getValue();
+        NotificationRequest notificationRequest = outboxNotificationCaptor.getValue().toNotificationRequest();
         assertThat(notificationRequest.getTo(), is("notification-to"));
         assertThat(notificationRequest.getNotification().getTitle(), is("RailWatch"));
         assertThat(notificationRequest.getNotification().getBody(), is("A message"));
     }
 
     @Test
-    public void sendNotificationSuccess_savesSentNotification() {
-        // Given...
-        given(sentNotificationRepository.findBySentDateTimeAfter(any())).willReturn(Collections.emptyList());
+    @SuppressWarnings("unchecked")
+    public void messageToSeveralTargets_sendNotifications_queuedInOneInsert() {
+        // When...
+        notificationService.sendNotifications(Arrays.asList(NotificationTarget.of("first"), NotificationTarget.of("second")), "A message");
+
+        // Then...
+        ArgumentCaptor<List<OutboxNotification>> outboxNotificationsCaptor = ArgumentCaptor.forClass((Class) List.class);
+        verify(outboxNotificationRepository).insert(outboxNotificationsCaptor.capture());
+        verify(outboxNotificationRepository, never()).save(any(OutboxNotification.class));
+
+        List<OutboxNotification> outboxNotifications = outboxNotificationsCaptor.getValue();
+        assertThat(outboxNotifications.size(), is(2));
+        assertThat(outboxNotifications.get(0).getTo(), is("first"));
+        assertThat(outboxNotifications.get(1).getTo(), is("second"));
+        assertThat(outboxNotifications.get(1).toNotificationRequest().getNotification().getBody(), is("A message"));
+    }
+
+    @Test
+    public void noTargets_sendNotifications_nothingQueued() {
+        // When...
+        notificationService.sendNotifications(Collections.emptyList(), "A message");
+
+        // Then...
+        verifyZeroInteractions(outboxNotificationRepository);
+    }
 
+    @Test
+    public void notificationQueued_sentNotificationNotSavedUntilRelayed() {
+        // Given...
         User user = createUser();
         Schedule schedule = new Schedule(
                 LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
@@ -145,36 +373,75 @@ public class NotificationServiceTest {
                         .withExpectedDepartureTime(LocalTime.NOON)
                         .build());
 
-        given(firebaseClient.sendNotification(any())).willReturn(true);
-
         // When...
         notificationService.sendNotification(schedule, trainTimes);
 
         // Then...
-        verify(sentNotificationRepository).save(any(SentNotification.class));
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(outboxNotificationCaptor.capture());
+        assertThat(outboxNotificationCaptor.getValue().getJourney(), is("FOO -> BAR"));
+        assertThat(outboxNotificationCaptor.getValue().getState(), is(OutboxState.PENDING));
+        verify(sentNotificationRepository, never()).save(any(SentNotification.class));
     }
 
     @Test
-    public void sendNotificationFails_doesNotSaveSentNotification() {
+    public void fanOutEnabled_twoSubscribersToSameTopic_singleNotificationQueuedForTopic() {
         // Given...
-        given(sentNotificationRepository.findBySentDateTimeAfter(any())).willReturn(Collections.emptyList());
+        Schedule schedule1 = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, createUser());
+        Schedule schedule2 = new Schedule(
+                LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED,
+                new User(UserId.generate(), "other-notification-to", UserState.ENABLED));
+        List<TrainTime> trainTimes = Collections.singletonList(
+                new TrainTime.Builder(LocalTime.NOON)
+                        .withExpectedDepartureTime(LocalTime.NOON)
+                        .build());
 
-        User user = createUser();
+        given(topicSubscriptionService.isEnabled()).willReturn(true);
+        given(topicSubscriptionService.ensureSubscribed(any(), any())).willReturn(true);
+
+        // When...
+        notificationService.sendNotification(schedule1, trainTimes);
+        notificationService.sendNotification(schedule2, trainTimes);
+
+        // Then...
+        verify(topicSubscriptionService).ensureSubscribed(schedule1.getNotificationTopic(), NotificationTarget.of("notification-to"));
+        verify(topicSubscriptionService).ensureSubscribed(schedule2.getNotificationTopic(), NotificationTarget.of("other-notification-to"));
+
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(outboxNotificationCaptor.capture());
+        assertThat(outboxNotificationCaptor.getValue().getTo(), is("/topics/journey-FOO-BAR-0900-1000-7f"));
+    }
+
+    @Test
+    public void fanOutEnabled_subscriptionFails_notificationQueuedForUser() {
+        // Given...
         Schedule schedule = new Schedule(
                 LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL,
-                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, user);
+                Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED, createUser());
         List<TrainTime> trainTimes = Collections.singletonList(
                 new TrainTime.Builder(LocalTime.NOON)
                         .withExpectedDepartureTime(LocalTime.NOON)
                         .build());
 
-        given(firebaseClient.sendNotification(any())).willReturn(false);
+        given(topicSubscriptionService.isEnabled()).willReturn(true);
+        given(topicSubscriptionService.ensureSubscribed(any(), any())).willReturn(false);
 
         // When...
         notificationService.sendNotification(schedule, trainTimes);
 
         // Then...
-        verify(sentNotificationRepository, never()).save(any(SentNotification.class));
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository).save(outboxNotificationCaptor.capture());
+        assertThat(outboxNotificationCaptor.getValue().getTo(), is("notification-to"));
+    }
+
+    private void deliverQueuedNotification(int queued) {
+        ArgumentCaptor<OutboxNotification> outboxNotificationCaptor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxNotificationRepository, times(queued)).save(outboxNotificationCaptor.capture());
+        lastSentBoardCache.put(outboxNotificationCaptor.getValue());
     }
 
     private User createUser() {
@@ -0,0 +1,78 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.repository.DailyUserActivityRepository;
+import com.cyanelix.railwatch.repository.HeartbeatRepository;
+import com.cyanelix.railwatch.repository.OutboxNotificationRepository;
+import com.cyanelix.railwatch.repository.SentNotificationRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetentionServiceTest {
+    @Mock
+    private HeartbeatRepository heartbeatRepository;
+
+    @Mock
+    private SentNotificationRepository sentNotificationRepository;
+
+    @Mock
+    private OutboxNotificationRepository outboxNotificationRepository;
+
+    @Mock
+    private DailyUserActivityRepository dailyUserActivityRepository;
+
+    private Clock clock;
+
+    @Before
+    public void setup() {
+        clock = Clock.fixed(Instant.parse("2017-01-10T02:30:00Z"), ZoneId.of("Europe/London"));
+    }
+
+    @Test
+    public void configuredRetention_ensureRetentionIndexes_ttlAppliedToEachCollection() {
+        // Given...
+        RetentionService retentionService = new RetentionService(heartbeatRepository, sentNotificationRepository, outboxNotificationRepository, dailyUserActivityRepository, clock, 14, 60, 2, 3);
+
+        // When...
+        retentionService.ensureRetentionIndexes();
+
+        // Then...
+        verify(heartbeatRepository).ensureRetention(Duration.ofDays(14));
+        verify(sentNotificationRepository).ensureRetention(Duration.ofDays(60));
+        verify(outboxNotificationRepository).ensureRetention(Duration.ofDays(2));
+    }
+
+    @Test
+    public void rollUpWindow_rollUp_eachCompleteDayRolledUpOldestFirst() {
+        // Given...
+        RetentionService retentionService = new RetentionService(heartbeatRepository, sentNotificationRepository, outboxNotificationRepository, dailyUserActivityRepository, clock, 30, 30, 1, 3);
+
+        // When...
+        retentionService.rollUp();
+
+        // Then...
+        InOrder inOrder = inOrder(dailyUserActivityRepository);
+        inOrder.verify(dailyUserActivityRepository).rollUp(LocalDate.of(2017, 1, 7));
+        inOrder.verify(dailyUserActivityRepository).rollUp(LocalDate.of(2017, 1, 8));
+        inOrder.verify(dailyUserActivityRepository).rollUp(LocalDate.of(2017, 1, 9));
+        verify(dailyUserActivityRepository, times(3)).rollUp(any(LocalDate.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rollUpWindowLongerThanRetention_construct_rejected() {
+        new RetentionService(heartbeatRepository, sentNotificationRepository, outboxNotificationRepository, dailyUserActivityRepository, clock, 30, 2, 1, 3);
+    }
+}
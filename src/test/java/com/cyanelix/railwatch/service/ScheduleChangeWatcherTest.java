@@ -0,0 +1,264 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.User;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScheduleChangeWatcherTest {
+    @Mock
+    private ScheduleRegistry scheduleRegistry;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoConverter mongoConverter;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    @Mock
+    private ChangeStreamIterable<Document> changeStream;
+
+    @Mock
+    private MongoCursor<ChangeStreamDocument<Document>> cursor;
+
+    private ScheduleChangeWatcher scheduleChangeWatcher;
+
+    @Before
+    public void setup() {
+        given(mongoTemplate.getConverter()).willReturn(mongoConverter);
+        given(mongoTemplate.getCollectionName(Schedule.class)).willReturn("schedule");
+        given(mongoTemplate.getCollection("schedule")).willReturn(collection);
+        given(collection.watch()).willReturn(changeStream);
+        given(changeStream.fullDocument(FullDocument.UPDATE_LOOKUP)).willReturn(changeStream);
+        given(changeStream.maxAwaitTime(anyLong(), any(TimeUnit.class))).willReturn(changeStream);
+
+        scheduleChangeWatcher = new ScheduleChangeWatcher(scheduleRegistry, mongoTemplate, 1L, 4L);
+        ReflectionTestUtils.setField(scheduleChangeWatcher, "running", true);
+    }
+
+    @Test
+    public void insertEvent_watch_schedulePutInRegistry() {
+        // Given...
+        Document document = new Document("_id", "1");
+        Schedule schedule = createSchedule();
+        given(mongoConverter.read(Schedule.class, document)).willReturn(schedule);
+        streamChanges(change(OperationType.INSERT, document, new BsonString("1")));
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(scheduleRegistry).put(schedule);
+    }
+
+    @Test
+    public void updateEvent_watch_schedulePutInRegistry() {
+        // Given...
+        Document document = new Document("_id", "1");
+        Schedule schedule = createSchedule();
+        given(mongoConverter.read(Schedule.class, document)).willReturn(schedule);
+        streamChanges(change(OperationType.UPDATE, document, new BsonString("1")));
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(scheduleRegistry).put(schedule);
+    }
+
+    @Test
+    public void updateEventForDeletedDocument_watch_registryUnchanged() {
+        // Given...
+        streamChanges(change(OperationType.UPDATE, null, new BsonString("1")));
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(scheduleRegistry, never()).put(any(Schedule.class));
+    }
+
+    @Test
+    public void deleteEvent_watch_scheduleRemovedFromRegistry() {
+        // Given...
+        ObjectId id = new ObjectId();
+        streamChanges(change(OperationType.DELETE, null, new BsonObjectId(id)));
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(scheduleRegistry).remove(id.toHexString());
+    }
+
+    @Test
+    public void invalidateEvent_watch_registryReloaded() {
+        // Given...
+        streamChanges(change(OperationType.INVALIDATE, null, null));
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(scheduleRegistry, times(2)).load();
+    }
+
+    @Test
+    public void streamOpens_watch_registryLoadedAfterStreamOpened() {
+        // Given...
+        streamChanges();
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        InOrder inOrder = inOrder(changeStream, scheduleRegistry);
+        inOrder.verify(changeStream).iterator();
+        inOrder.verify(scheduleRegistry).load();
+        assertFalse(scheduleChangeWatcher.isPolling());
+    }
+
+    @Test
+    public void streamUnavailable_watch_pollingFallbackAndStreamRetried() {
+        // Given...
+        AtomicInteger attempts = new AtomicInteger();
+        given(changeStream.iterator()).willAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 3) {
+                scheduleChangeWatcher.stop();
+            }
+            throw changeStreamsUnsupported();
+        });
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(changeStream, times(3)).iterator();
+        verify(scheduleRegistry, never()).load();
+        assertTrue(scheduleChangeWatcher.isPolling());
+    }
+
+    @Test
+    public void pollingFallback_poll_registryReloaded() {
+        // Given...
+        given(changeStream.iterator()).willAnswer(invocation -> {
+            scheduleChangeWatcher.stop();
+            throw changeStreamsUnsupported();
+        });
+        scheduleChangeWatcher.watch();
+
+        // When...
+        scheduleChangeWatcher.poll();
+
+        // Then...
+        verify(scheduleRegistry).load();
+    }
+
+    @Test
+    public void streamFailsThenReopens_watch_pollingStoppedAndRegistryReloaded() {
+        // Given...
+        AtomicInteger attempts = new AtomicInteger();
+        given(changeStream.iterator()).willAnswer(invocation -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Connection reset");
+            }
+            return cursor;
+        });
+        given(cursor.tryNext()).willAnswer(invocation -> {
+            scheduleChangeWatcher.stop();
+            return null;
+        });
+
+        // When...
+        scheduleChangeWatcher.watch();
+
+        // Then...
+        verify(changeStream, times(2)).iterator();
+        verify(scheduleRegistry).load();
+        assertFalse(scheduleChangeWatcher.isPolling());
+    }
+
+    @Test
+    public void streamNotFailed_poll_registryNotReloaded() {
+        // When...
+        scheduleChangeWatcher.poll();
+
+        // Then...
+        verify(scheduleRegistry, never()).load();
+    }
+
+    @SafeVarargs
+    private final void streamChanges(ChangeStreamDocument<Document>... changes) {
+        AtomicInteger next = new AtomicInteger();
+        given(changeStream.iterator()).willReturn(cursor);
+        given(cursor.tryNext()).willAnswer(invocation -> {
+            int index = next.getAndIncrement();
+            if (index < changes.length) {
+                return changes[index];
+            }
+
+            scheduleChangeWatcher.stop();
+            return null;
+        });
+    }
+
+    private ChangeStreamDocument<Document> change(OperationType operationType, Document fullDocument, BsonValue id) {
+        BsonDocument documentKey = id == null ? null : new BsonDocument("_id", id);
+        return new ChangeStreamDocument<>(new BsonDocument("_data", new BsonInt32(1)), new MongoNamespace("railwatch.schedule"),
+                fullDocument, documentKey, operationType, null);
+    }
+
+    private Schedule createSchedule() {
+        return new Schedule(LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("FOO"), Station.of("BAR"), ScheduleState.ENABLED,
+                new User(UserId.generate(), "notification-target", UserState.ENABLED));
+    }
+
+    private MongoCommandException changeStreamsUnsupported() {
+        BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+                .append("errmsg", new BsonString("The $changeStream stage is only supported on replica sets"))
+                .append("code", new BsonInt32(40573));
+        return new MongoCommandException(response, new ServerAddress());
+    }
+}
@@ -0,0 +1,198 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.repository.ScheduleRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.collection.IsEmptyCollection.empty;
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScheduleRegistryTest {
+    @Mock
+    private ScheduleRepository scheduleRepository;
+
+    private ScheduleRegistry scheduleRegistry;
+
+    @Before
+    public void setup() {
+        scheduleRegistry = new ScheduleRegistry(scheduleRepository);
+    }
+
+    @Test
+    public void enabledSchedulesInRepository_load_registryPopulated() {
+        // Given...
+        Schedule schedule1 = createSchedule("1", ScheduleState.ENABLED);
+        Schedule schedule2 = createSchedule("2", ScheduleState.ENABLED);
+        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED)).willReturn(Arrays.asList(schedule1, schedule2));
+
+        // When...
+        scheduleRegistry.load();
+
+        // Then...
+        assertThat(getEnabledSchedules(), containsInAnyOrder(schedule1, schedule2));
+    }
+
+    @Test
+    public void schedulesReferencingUsers_initialise_snapshotsEmbeddedBeforeLoading() {
+        // Given...
+        Schedule schedule = createSchedule("1", ScheduleState.ENABLED);
+        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED)).willReturn(Collections.singletonList(schedule));
+
+        // When...
+        scheduleRegistry.initialise();
+
+        // Then...
+        InOrder inOrder = inOrder(scheduleRepository);
+        inOrder.verify(scheduleRepository).embedUserSnapshots();
+        inOrder.verify(scheduleRepository).findByStateIs(ScheduleState.ENABLED);
+        assertThat(getEnabledSchedules(), containsInAnyOrder(schedule));
+    }
+
+    @Test
+    public void scheduleRemovedFromRepository_reload_scheduleDropped() {
+        // Given...
+        Schedule schedule1 = createSchedule("1", ScheduleState.ENABLED);
+        Schedule schedule2 = createSchedule("2", ScheduleState.ENABLED);
+        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED))
+                .willReturn(Arrays.asList(schedule1, schedule2), Collections.singletonList(schedule2));
+        scheduleRegistry.load();
+
+        // When...
+        scheduleRegistry.load();
+
+        // Then...
+        verify(scheduleRepository, times(2)).findByStateIs(ScheduleState.ENABLED);
+        assertThat(getEnabledSchedules(), containsInAnyOrder(schedule2));
+    }
+
+    @Test
+    public void enabledSchedule_put_scheduleAdded() {
+        // Given...
+        Schedule schedule = createSchedule("1", ScheduleState.ENABLED);
+
+        // When...
+        scheduleRegistry.put(schedule);
+
+        // Then...
+        assertThat(getEnabledSchedules(), containsInAnyOrder(schedule));
+    }
+
+    @Test
+    public void scheduleUpdatedToDisabled_put_scheduleRemoved() {
+        // Given...
+        scheduleRegistry.put(createSchedule("1", ScheduleState.ENABLED));
+
+        // When...
+        scheduleRegistry.put(createSchedule("1", ScheduleState.DISABLED));
+
+        // Then...
+        assertThat(getEnabledSchedules(), empty());
+    }
+
+    @Test
+    public void existingSchedule_remove_scheduleRemoved() {
+        // Given...
+        scheduleRegistry.put(createSchedule("1", ScheduleState.ENABLED));
+
+        // When...
+        scheduleRegistry.remove("1");
+
+        // Then...
+        assertThat(getEnabledSchedules(), empty());
+    }
+
+    @Test
+    public void scheduleForDisabledUser_put_scheduleNotAdded() {
+        // Given...
+        User user = new User(UserId.generate(), "notification-target", UserState.DISABLED);
+
+        // When...
+        scheduleRegistry.put(createSchedule("1", ScheduleState.ENABLED, user));
+
+        // Then...
+        assertThat(getEnabledSchedules(), empty());
+    }
+
+    @Test
+    public void userWithSchedules_removeUser_onlyTheirSchedulesRemoved() {
+        // Given...
+        User user = createUser();
+        User otherUser = createUser();
+        Schedule otherSchedule = createSchedule("3", ScheduleState.ENABLED, otherUser);
+
+        scheduleRegistry.put(createSchedule("1", ScheduleState.ENABLED, user));
+        scheduleRegistry.put(createSchedule("2", ScheduleState.ENABLED, user));
+        scheduleRegistry.put(otherSchedule);
+
+        // When...
+        scheduleRegistry.removeUser(user.getUserId());
+
+        // Then...
+        assertThat(getEnabledSchedules(), containsInAnyOrder(otherSchedule));
+    }
+
+    @Test
+    public void enabledSchedule_put_versionChanged() {
+        // Given...
+        long version = scheduleRegistry.getVersion();
+
+        // When...
+        scheduleRegistry.put(createSchedule("1", ScheduleState.ENABLED));
+
+        // Then...
+        assertThat(scheduleRegistry.getVersion(), is(not(version)));
+    }
+
+    @Test
+    public void unknownSchedule_remove_versionUnchanged() {
+        // Given...
+        long version = scheduleRegistry.getVersion();
+
+        // When...
+        scheduleRegistry.remove("1");
+
+        // Then...
+        assertThat(scheduleRegistry.getVersion(), is(version));
+    }
+
+    private List<Schedule> getEnabledSchedules() {
+        return scheduleRegistry.getEnabledSchedules().collect(Collectors.toList());
+    }
+
+    private Schedule createSchedule(String id, ScheduleState state) {
+        return createSchedule(id, state, createUser());
+    }
+
+    private Schedule createSchedule(String id, ScheduleState state, User user) {
+        Schedule schedule = new Schedule(LocalTime.MIN, LocalTime.MAX, DayRange.ALL,
+                Station.of("FOO"), Station.of("BAR"), state, user);
+        ReflectionTestUtils.setField(schedule, "id", id);
+        return schedule;
+    }
+
+    private User createUser() {
+        return new User(UserId.generate(), "notification-target", UserState.ENABLED);
+    }
+}
@@ -4,6 +4,8 @@ import com.cyanelix.railwatch.domain.*;
 import com.cyanelix.railwatch.entity.Schedule;
 import com.cyanelix.railwatch.entity.User;
 import com.cyanelix.railwatch.repository.ScheduleRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,16 +13,23 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.ZoneId;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.hamcrest.collection.IsCollectionWithSize.hasSize;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
@@ -39,14 +48,21 @@ public class ScheduleServiceTest {
     @Mock
     private ScheduleRepository scheduleRepository;
 
+    @Mock
+    private ScheduleRegistry scheduleRegistry;
+
     @Mock
     private UserService userService;
 
+    private MeterRegistry meterRegistry;
+
     private ScheduleService scheduleService;
 
     @Before
     public void setup() {
-        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, userService, Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.systemDefault()));
+        meterRegistry = new SimpleMeterRegistry();
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.systemDefault()),
+                meterRegistry, 30000L, 30000L, false, Runnable::run, 1);
     }
 
     @Test
@@ -64,6 +80,7 @@ public class ScheduleServiceTest {
 
         // Then...
         verify(scheduleRepository).save(schedule);
+        verify(scheduleRegistry).put(schedule);
     }
 
     @Test
@@ -74,8 +91,7 @@ public class ScheduleServiceTest {
         Schedule activeSchedule = new Schedule(
                 LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
                 ScheduleState.ENABLED, user);
-        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED)).willReturn(
-                Collections.singletonList(activeSchedule));
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(activeSchedule));
 
         // When...
         scheduleService.checkTimes();
@@ -85,6 +101,27 @@ public class ScheduleServiceTest {
         verify(notificationService).sendNotification(eq(activeSchedule), any());
     }
 
+    @Test
+    public void activeQueryEnabled_checkTimesTwiceInOneMinute_activeSchedulesQueriedOnce() {
+        // Given...
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, Clock.fixed(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.systemDefault()),
+                meterRegistry, 30000L, 30000L, true, Runnable::run, 1);
+
+        Schedule activeSchedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRepository.findActiveAt(any())).willReturn(Collections.singletonList(activeSchedule));
+
+        // When...
+        scheduleService.checkTimes();
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(scheduleRepository).findActiveAt(any());
+        verify(scheduleRegistry, never()).getEnabledSchedules();
+        verify(notificationService).sendNotification(eq(activeSchedule), any());
+    }
+
     @Test
     public void oneActiveOneInactiveSchedule_checkTimes_onlyActiveRouteLookedUp() {
         // Given...
@@ -96,8 +133,7 @@ public class ScheduleServiceTest {
         Schedule inactiveSchedule = new Schedule(
                 LocalTime.MAX, LocalTime.MIN, DayRange.ALL, Station.of("XXX"), Station.of("ZZZ"),
                 ScheduleState.ENABLED, user);
-        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED)).willReturn(
-                Arrays.asList(activeSchedule, inactiveSchedule));
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(activeSchedule, inactiveSchedule));
 
         // When...
         scheduleService.checkTimes();
@@ -113,7 +149,7 @@ public class ScheduleServiceTest {
     @Test
     public void noEnabledSchedules_checkTimes_notLookedUp() {
         // Given...
-        given(scheduleRepository.findByStateIs(ScheduleState.ENABLED)).willReturn(Collections.emptyList());
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.empty());
 
         // When...
         scheduleService.checkTimes();
@@ -123,6 +159,245 @@ public class ScheduleServiceTest {
         verify(notificationService, never()).sendNotification(any(NotificationTarget.class), any());
     }
 
+    @Test
+    public void twoSchedulesForSameJourney_checkTimes_journeyLookedUpOnce() {
+        // Given...
+        Schedule schedule1 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        Schedule schedule2 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule1, schedule2));
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(trainTimesService, times(1)).lookupTrainTimes(Station.of("FOO"), Station.of("BAR"));
+        verify(notificationService).sendNotification(eq(schedule1), any());
+        verify(notificationService).sendNotification(eq(schedule2), any());
+    }
+
+    @Test
+    public void lookupFailsForOneJourney_checkTimes_otherJourneysStillNotified() {
+        // Given...
+        User user = createUser();
+
+        Schedule failingSchedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("XXX"), Station.of("ZZZ"),
+                ScheduleState.ENABLED, user);
+        Schedule workingSchedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, user);
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(failingSchedule, workingSchedule));
+        given(trainTimesService.lookupTrainTimes(Station.of("XXX"), Station.of("ZZZ"))).willThrow(new IllegalStateException());
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(notificationService, never()).sendNotification(eq(failingSchedule), any());
+        verify(notificationService).sendNotification(eq(workingSchedule), any());
+    }
+
+    @Test
+    public void slotBudgetSpentOnFirstJourney_checkTimes_remainingJourneysPostponed() {
+        // Given...
+        MutableClock clock = new MutableClock(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.of("UTC"));
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 30000L, false, Runnable::run, 1);
+
+        given(trainTimesService.lookupTrainTimes(any(), any())).willAnswer(invocation -> {
+            clock.advance(Duration.ofSeconds(31));
+            return Collections.emptyList();
+        });
+
+        User user = createUser();
+        Schedule schedule1 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, user);
+        Schedule schedule2 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("XXX"), Station.of("ZZZ"),
+                ScheduleState.ENABLED, user);
+        Schedule schedule3 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("AAA"), Station.of("BBB"),
+                ScheduleState.ENABLED, user);
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule1, schedule2, schedule3));
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(trainTimesService, times(1)).lookupTrainTimes(any(), any());
+        assertThat(meterRegistry.counter("railwatch.schedules.journeys.postponed").count(), is(2.0));
+        assertThat(meterRegistry.counter("railwatch.schedules.tick.overruns").count(), is(1.0));
+    }
+
+    @Test
+    public void twoLookupWorkers_checkTimes_lookupsRunConcurrentlyAndRemainderPostponed() throws InterruptedException {
+        // Given...
+        MutableClock clock = new MutableClock(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.of("UTC"));
+        ExecutorService lookupExecutor = Executors.newFixedThreadPool(2);
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 30000L, false, lookupExecutor, 2);
+
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        given(trainTimesService.lookupTrainTimes(any(), any())).willAnswer(invocation -> {
+            bothStarted.countDown();
+            if (bothStarted.await(5, TimeUnit.SECONDS)) {
+                clock.set(Instant.parse("2017-01-01T10:31:00Z"));
+            }
+            return Collections.emptyList();
+        });
+
+        User user = createUser();
+        Schedule schedule1 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, user);
+        Schedule schedule2 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("XXX"), Station.of("ZZZ"),
+                ScheduleState.ENABLED, user);
+        Schedule schedule3 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("AAA"), Station.of("BBB"),
+                ScheduleState.ENABLED, user);
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule1, schedule2, schedule3));
+
+        // When...
+        scheduleService.checkTimes();
+        lookupExecutor.shutdown();
+
+        // Then...
+        assertThat(bothStarted.getCount(), is(0L));
+        verify(trainTimesService, times(2)).lookupTrainTimes(any(), any());
+        assertThat(meterRegistry.counter("railwatch.schedules.journeys.postponed").count(), is(1.0));
+    }
+
+    @Test
+    public void journeyPostponed_nextCheckTimes_postponedJourneyLookedUpFirst() {
+        // Given...
+        MutableClock clock = new MutableClock(Instant.parse("2017-01-01T10:30:00Z"), ZoneId.of("UTC"));
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 30000L, false, Runnable::run, 1);
+
+        List<Station> lookedUp = new ArrayList<>();
+        given(trainTimesService.lookupTrainTimes(any(), any())).willAnswer(invocation -> {
+            lookedUp.add(invocation.<Station>getArgument(0));
+            clock.advance(Duration.ofSeconds(31));
+            return Collections.emptyList();
+        });
+
+        User user = createUser();
+        Schedule schedule1 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, user);
+        Schedule schedule2 = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, Station.of("XXX"), Station.of("ZZZ"),
+                ScheduleState.ENABLED, user);
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule1, schedule2), Stream.of(schedule1, schedule2));
+        scheduleService.checkTimes();
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        assertThat(lookedUp, hasSize(2));
+        assertThat(lookedUp.get(1), is(not(lookedUp.get(0))));
+    }
+
+    @Test
+    public void postponedJourney_nextCheckTimes_journeyLookedUp() {
+        // Given...
+        MutableClock clock = new MutableClock(atPhaseOffset(500L), ZoneId.of("UTC"));
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 1000L, false, Runnable::run, 1);
+
+        Schedule schedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRegistry.getEnabledSchedules()).willAnswer(invocation -> {
+            clock.advance(Duration.ofSeconds(2));
+            return Stream.of(schedule);
+        }).willReturn(Stream.of(schedule));
+        scheduleService.checkTimes();
+        verify(trainTimesService, never()).lookupTrainTimes(any(), any());
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(trainTimesService, times(1)).lookupTrainTimes(Station.of("FOO"), Station.of("BAR"));
+    }
+
+    @Test
+    public void journeyPhaseWithinSlot_checkTimes_lookedUp() {
+        // Given...
+        givenSlottedScheduleServiceAtPhaseOffset(500L);
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(trainTimesService).lookupTrainTimes(Station.of("FOO"), Station.of("BAR"));
+    }
+
+    @Test
+    public void journeyPhaseOutsideSlot_checkTimes_notLookedUp() {
+        // Given...
+        givenSlottedScheduleServiceAtPhaseOffset(1500L);
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(trainTimesService, never()).lookupTrainTimes(any(), any());
+    }
+
+    @Test
+    public void registryUnchanged_checkTimesTwice_schedulesIndexedOnce() {
+        // Given...
+        MutableClock clock = new MutableClock(atPhaseOffset(500L), ZoneId.of("UTC"));
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 1000L, false, Runnable::run, 1);
+
+        Schedule schedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule));
+        scheduleService.checkTimes();
+        clock.advance(Duration.ofSeconds(30));
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(scheduleRegistry, times(1)).getEnabledSchedules();
+        verify(trainTimesService, times(2)).lookupTrainTimes(Station.of("FOO"), Station.of("BAR"));
+    }
+
+    @Test
+    public void registryChanged_nextCheckTimes_schedulesReindexed() {
+        // Given...
+        MutableClock clock = new MutableClock(atPhaseOffset(500L), ZoneId.of("UTC"));
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService, clock,
+                meterRegistry, 30000L, 1000L, false, Runnable::run, 1);
+
+        Schedule schedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRegistry.getVersion()).willReturn(1L, 2L);
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.empty(), Stream.of(schedule));
+        scheduleService.checkTimes();
+        clock.advance(Duration.ofSeconds(30));
+
+        // When...
+        scheduleService.checkTimes();
+
+        // Then...
+        verify(scheduleRegistry, times(2)).getEnabledSchedules();
+        verify(trainTimesService).lookupTrainTimes(Station.of("FOO"), Station.of("BAR"));
+    }
+
     @Test
     public void singleSchedule_getSchedules() {
         // Given...
@@ -150,7 +425,7 @@ public class ScheduleServiceTest {
         Schedule schedule = new Schedule(LocalTime.MIN, LocalTime.MAX, DayRange.ALL,
                 FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(), ScheduleState.ENABLED, user);
 
-        given(scheduleRepository.findByUser(user)).willReturn(Collections.singletonList(schedule));
+        given(scheduleRepository.findByUserUserId(user.getUserId())).willReturn(Collections.singletonList(schedule));
 
         // When...
         List<Schedule> userSchedules = scheduleService.getSchedulesForUser(user);
@@ -159,6 +434,21 @@ public class ScheduleServiceTest {
         assertThat(userSchedules, hasSize(1));
     }
 
+    private void givenSlottedScheduleServiceAtPhaseOffset(long millisAfterPhase) {
+        scheduleService = new ScheduleService(trainTimesService, notificationService, scheduleRepository, scheduleRegistry, userService,
+                Clock.fixed(atPhaseOffset(millisAfterPhase), ZoneId.of("UTC")), meterRegistry, 30000L, 1000L, false, Runnable::run, 1);
+
+        Schedule schedule = new Schedule(
+                LocalTime.MIN, LocalTime.MAX, DayRange.ALL, FOO_TO_BAR.getFrom(), FOO_TO_BAR.getTo(),
+                ScheduleState.ENABLED, createUser());
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule));
+    }
+
+    private Instant atPhaseOffset(long millisAfterPhase) {
+        long phaseOffset = Math.floorMod((long) FOO_TO_BAR.toString().hashCode(), 30000L);
+        return Instant.ofEpochMilli(Instant.parse("2017-01-01T10:30:00Z").toEpochMilli() + phaseOffset + millisAfterPhase);
+    }
+
     private User createUser() {
         return new User(UserId.generate(), NotificationTarget.of("notification-target").getTargetAddress(), UserState.ENABLED);
     }
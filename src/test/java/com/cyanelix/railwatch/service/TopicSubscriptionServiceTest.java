@@ -0,0 +1,239 @@
+package com.cyanelix.railwatch.service;
+
+import com.cyanelix.railwatch.domain.*;
+import com.cyanelix.railwatch.entity.Schedule;
+import com.cyanelix.railwatch.entity.TopicSubscription;
+import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.firebase.client.FirebaseClient;
+import com.cyanelix.railwatch.firebase.client.entity.TopicSubscriptionResult;
+import com.cyanelix.railwatch.repository.TopicSubscriptionRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TopicSubscriptionServiceTest {
+    private static final NotificationTarget TARGET = NotificationTarget.of("notification-to");
+
+    @Mock
+    private FirebaseClient firebaseClient;
+
+    @Mock
+    private TopicSubscriptionRepository topicSubscriptionRepository;
+
+    @Mock
+    private ScheduleRegistry scheduleRegistry;
+
+    @Mock
+    private UserService userService;
+
+    private TopicSubscriptionService topicSubscriptionService;
+
+    private Schedule schedule;
+
+    @Before
+    public void setup() {
+        topicSubscriptionService = new TopicSubscriptionService(firebaseClient, topicSubscriptionRepository, scheduleRegistry, userService, true);
+        schedule = new Schedule(LocalTime.of(9, 0), LocalTime.of(10, 0), DayRange.ALL, Station.of("FOO"), Station.of("BAR"),
+                ScheduleState.ENABLED, new User(UserId.generate(), TARGET.getTargetAddress(), UserState.ENABLED));
+    }
+
+    @Test
+    public void newMember_ensureSubscribedTwice_subscribedOnce() {
+        // Given...
+        given(firebaseClient.subscribe(schedule.getNotificationTopic(), Collections.singleton(TARGET))).willReturn(accepted(TARGET));
+
+        // When...
+        boolean first = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+        boolean second = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(first, is(true));
+        assertThat(second, is(true));
+        verify(firebaseClient, times(1)).subscribe(any(), any());
+        verify(topicSubscriptionRepository, times(1)).insert(any(TopicSubscription.class));
+    }
+
+    @Test
+    public void subscribeFails_ensureSubscribed_falseAndRetriedNextTime() {
+        // Given...
+        given(firebaseClient.subscribe(any(), any()))
+                .willThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .willReturn(accepted(TARGET));
+
+        // When...
+        boolean first = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+        boolean second = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(first, is(false));
+        assertThat(second, is(true));
+    }
+
+    @Test
+    public void tokenRejected_ensureSubscribed_falseAndMembershipNotRecorded() {
+        // Given...
+        given(firebaseClient.subscribe(any(), any())).willReturn(rejected(TARGET, "INTERNAL"));
+
+        // When...
+        boolean subscribed = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(subscribed, is(false));
+        verify(topicSubscriptionRepository, never()).insert(any(TopicSubscription.class));
+        verify(userService, never()).disableUsersByNotificationTargets(any());
+    }
+
+    @Test
+    public void tokenNotFound_ensureSubscribed_falseAndUserDisabled() {
+        // Given...
+        given(firebaseClient.subscribe(any(), any())).willReturn(rejected(TARGET, "NOT_FOUND"));
+
+        // When...
+        boolean subscribed = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(subscribed, is(false));
+        verify(topicSubscriptionRepository, never()).insert(any(TopicSubscription.class));
+        verify(userService).disableUsersByNotificationTargets(Collections.singleton(TARGET));
+    }
+
+    @Test
+    public void memberStillScheduled_reconcile_notUnsubscribed() {
+        // Given...
+        given(topicSubscriptionRepository.findAll()).willReturn(Collections.singletonList(TopicSubscription.of(schedule.getNotificationTopic(), TARGET)));
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.of(schedule));
+
+        // When...
+        topicSubscriptionService.reconcile();
+
+        // Then...
+        verify(firebaseClient, never()).unsubscribe(any(), any());
+    }
+
+    @Test
+    public void memberNoLongerScheduled_reconcile_unsubscribed() {
+        // Given...
+        given(firebaseClient.unsubscribe(any(), any())).willReturn(accepted(TARGET));
+        given(topicSubscriptionRepository.findAll()).willReturn(Collections.singletonList(TopicSubscription.of(schedule.getNotificationTopic(), TARGET)));
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.empty());
+
+        // When...
+        topicSubscriptionService.reconcile();
+
+        // Then...
+        verify(firebaseClient).unsubscribe(schedule.getNotificationTopic(), Collections.singleton(TARGET));
+        verify(topicSubscriptionRepository).deleteByTopicAndNotificationTargetIn(schedule.getNotificationTopic().getName(), Collections.singletonList(TARGET.getTargetAddress()));
+    }
+
+    @Test
+    public void someTokensRejected_reconcile_onlyRemovedTokensForgottenAndInvalidUsersDisabled() {
+        // Given...
+        NotificationTarget unavailable = NotificationTarget.of("unavailable");
+        NotificationTarget notFound = NotificationTarget.of("not-found");
+        Map<NotificationTarget, TopicSubscriptionResult> results = new HashMap<>();
+        results.put(TARGET, new TopicSubscriptionResult());
+        results.put(unavailable, new TopicSubscriptionResult("INTERNAL"));
+        results.put(notFound, new TopicSubscriptionResult("NOT_FOUND"));
+        given(firebaseClient.unsubscribe(any(), any())).willReturn(results);
+        given(topicSubscriptionRepository.findAll()).willReturn(Arrays.asList(
+                TopicSubscription.of(schedule.getNotificationTopic(), TARGET),
+                TopicSubscription.of(schedule.getNotificationTopic(), unavailable),
+                TopicSubscription.of(schedule.getNotificationTopic(), notFound)));
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.empty());
+
+        // When...
+        topicSubscriptionService.reconcile();
+
+        // Then...
+        ArgumentCaptor<List<String>> deletedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(topicSubscriptionRepository).deleteByTopicAndNotificationTargetIn(eq(schedule.getNotificationTopic().getName()), deletedCaptor.capture());
+        assertThat(deletedCaptor.getValue(), containsInAnyOrder(TARGET.getTargetAddress(), notFound.getTargetAddress()));
+        verify(userService).disableUsersByNotificationTargets(Collections.singleton(notFound));
+    }
+
+    @Test
+    public void subscriptionRecordedBeforeRestart_load_knownWithoutResubscribing() {
+        // Given...
+        given(topicSubscriptionRepository.findAll()).willReturn(Collections.singletonList(TopicSubscription.of(schedule.getNotificationTopic(), TARGET)));
+        TopicSubscriptionService restarted = new TopicSubscriptionService(firebaseClient, topicSubscriptionRepository, scheduleRegistry, userService, true);
+
+        // When...
+        restarted.load();
+        boolean subscribed = restarted.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(subscribed, is(true));
+        verify(firebaseClient, never()).subscribe(any(), any());
+    }
+
+    @Test
+    public void memberUnscheduledWhileRestarting_reconcileAfterRestart_unsubscribedAndForgotten() {
+        // Given...
+        given(firebaseClient.subscribe(any(), any())).willReturn(accepted(TARGET));
+        topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        given(firebaseClient.unsubscribe(any(), any())).willReturn(accepted(TARGET));
+        given(topicSubscriptionRepository.findAll())
+                .willReturn(Collections.singletonList(TopicSubscription.of(schedule.getNotificationTopic(), TARGET)), Collections.emptyList());
+        given(scheduleRegistry.getEnabledSchedules()).willReturn(Stream.empty());
+        TopicSubscriptionService restarted = new TopicSubscriptionService(firebaseClient, topicSubscriptionRepository, scheduleRegistry, userService, true);
+
+        // When...
+        restarted.reconcile();
+        boolean subscribed = restarted.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        verify(firebaseClient).unsubscribe(schedule.getNotificationTopic(), Collections.singleton(TARGET));
+        assertThat(subscribed, is(true));
+        verify(firebaseClient, times(2)).subscribe(any(), any());
+    }
+
+    @Test
+    public void subscriptionAlreadyRecordedByAnotherInstance_ensureSubscribed_subscribed() {
+        // Given...
+        given(firebaseClient.subscribe(any(), any())).willReturn(accepted(TARGET));
+        given(topicSubscriptionRepository.insert(any(TopicSubscription.class))).willThrow(new DuplicateKeyException("duplicate"));
+
+        // When...
+        boolean first = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+        boolean second = topicSubscriptionService.ensureSubscribed(schedule.getNotificationTopic(), TARGET);
+
+        // Then...
+        assertThat(first, is(true));
+        assertThat(second, is(true));
+        verify(firebaseClient, times(1)).subscribe(any(), any());
+    }
+
+    private Map<NotificationTarget, TopicSubscriptionResult> accepted(NotificationTarget notificationTarget) {
+        return Collections.singletonMap(notificationTarget, new TopicSubscriptionResult());
+    }
+
+    private Map<NotificationTarget, TopicSubscriptionResult> rejected(NotificationTarget notificationTarget, String error) {
+        return Collections.singletonMap(notificationTarget, new TopicSubscriptionResult(error));
+    }
+}
@@ -3,6 +3,7 @@ package com.cyanelix.railwatch.service;
 import com.cyanelix.railwatch.darwin.client.DarwinClient;
 import com.cyanelix.railwatch.darwin.client.DeparturesBoardRequest;
 import com.cyanelix.railwatch.domain.Station;
+import com.cyanelix.railwatch.domain.TrainTime;
 import com.thalesgroup.rtti._2016_02_16.ldb.GetBoardRequestParams;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -11,12 +12,18 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class TrainTimesServiceTest {
@@ -47,4 +54,51 @@ public class TrainTimesServiceTest {
         assertThat(requestParams.getCrs(), is(fromStation.getStationCode()));
         assertThat(requestParams.getFilterCrs(), is(toStation.getStationCode()));
     }
+
+    @Test
+    public void concurrentLookupsForOneJourney_lookupTrainTimesAsync_darwinCalledOnce() {
+        // Given...
+        List<Runnable> queuedLookups = new ArrayList<>();
+        TrainTimesService asyncTrainTimesService = new TrainTimesService(mockDarwinClient, queuedLookups::add);
+        List<TrainTime> trainTimes = Collections.singletonList(new TrainTime.Builder(LocalTime.of(10, 0)).withExpectedDepartureTime(LocalTime.of(10, 0)).build());
+        given(mockDarwinClient.sendAndReceive(any(), any())).willReturn(trainTimes);
+
+        // When...
+        CompletableFuture<List<TrainTime>> first = asyncTrainTimesService.lookupTrainTimesAsync(Station.of("FOO"), Station.of("BAR"));
+        CompletableFuture<List<TrainTime>> second = asyncTrainTimesService.lookupTrainTimesAsync(Station.of("FOO"), Station.of("BAR"));
+        queuedLookups.forEach(Runnable::run);
+
+        // Then...
+        assertThat(queuedLookups.size(), is(1));
+        assertThat(first.join(), is(trainTimes));
+        assertThat(second.join(), is(trainTimes));
+        verify(mockDarwinClient).sendAndReceive(any(), any());
+    }
+
+    @Test
+    public void completedLookup_lookupTrainTimesAsyncAgain_darwinCalledAgain() {
+        // Given...
+        TrainTimesService asyncTrainTimesService = new TrainTimesService(mockDarwinClient, Runnable::run);
+        given(mockDarwinClient.sendAndReceive(any(), any())).willReturn(Collections.emptyList());
+        asyncTrainTimesService.lookupTrainTimesAsync(Station.of("FOO"), Station.of("BAR")).join();
+
+        // When...
+        asyncTrainTimesService.lookupTrainTimesAsync(Station.of("FOO"), Station.of("BAR")).join();
+
+        // Then...
+        verify(mockDarwinClient, times(2)).sendAndReceive(any(), any());
+    }
+
+    @Test
+    public void darwinFails_lookupTrainTimesAsync_completedExceptionally() {
+        // Given...
+        TrainTimesService asyncTrainTimesService = new TrainTimesService(mockDarwinClient, Runnable::run);
+        given(mockDarwinClient.sendAndReceive(any(), any())).willThrow(new IllegalStateException("Darwin unavailable"));
+
+        // When...
+        CompletableFuture<List<TrainTime>> lookup = asyncTrainTimesService.lookupTrainTimesAsync(Station.of("FOO"), Station.of("BAR"));
+
+        // Then...
+        assertThat(lookup.isCompletedExceptionally(), is(true));
+    }
 }
@@ -4,6 +4,7 @@ import com.cyanelix.railwatch.domain.NotificationTarget;
 import com.cyanelix.railwatch.domain.UserId;
 import com.cyanelix.railwatch.domain.UserState;
 import com.cyanelix.railwatch.entity.User;
+import com.cyanelix.railwatch.repository.ScheduleRepository;
 import com.cyanelix.railwatch.repository.UserRepository;
 import org.junit.Rule;
 import org.junit.Test;
@@ -14,11 +15,18 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class UserServiceTest {
@@ -31,6 +39,12 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ScheduleRepository scheduleRepository;
+
+    @Mock
+    private ScheduleRegistry scheduleRegistry;
+
     @InjectMocks
     private UserService userService;
 
@@ -96,6 +110,42 @@ public class UserServiceTest {
         // Then...
         verify(userRepository).save(user);
         assertThat(user.getUserState(), is(UserState.DISABLED));
+        verify(scheduleRepository).updateUserState(Collections.singletonList(user.getUserId()), UserState.DISABLED);
+        verify(scheduleRegistry).removeUser(user.getUserId());
+    }
+
+    @Test
+    public void unknownNotificationTarget_disableUserByNotificationTarget_nothingSaved() {
+        // Given...
+        NotificationTarget notificationTarget = NotificationTarget.of("unknown");
+        when(userRepository.findByNotificationTarget(notificationTarget.getTargetAddress())).thenReturn(null);
+
+        // When...
+        userService.disableUserByNotificationTarget(notificationTarget);
+
+        // Then...
+        verify(userRepository, never()).save(any(User.class));
+        verifyZeroInteractions(scheduleRepository, scheduleRegistry);
+    }
+
+    @Test
+    public void severalNotificationTargets_disableUsersByNotificationTargets_disabledTogetherAndSchedulesRemoved() {
+        // Given...
+        UserId first = UserId.generate();
+        UserId second = UserId.generate();
+        when(userRepository.disableByNotificationTargets(Arrays.asList("first", "second", "unknown")))
+                .thenReturn(Arrays.asList(first, second));
+
+        // When...
+        userService.disableUsersByNotificationTargets(Arrays.asList(
+                NotificationTarget.of("first"), NotificationTarget.of("second"), NotificationTarget.of("unknown")));
+
+        // Then...
+        verify(userRepository, never()).save(any(User.class));
+        verify(scheduleRepository).updateUserState(Arrays.asList(first, second), UserState.DISABLED);
+        verify(scheduleRegistry).removeUser(first);
+        verify(scheduleRegistry).removeUser(second);
+        verifyNoMoreInteractions(scheduleRegistry);
     }
 
     @Test